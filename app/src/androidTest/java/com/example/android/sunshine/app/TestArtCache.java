@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+public class TestArtCache extends AndroidTestCase {
+    private static final int SIDE = 10;
+    private static final int BITMAP_BYTES = SIDE * SIDE * 4;
+    private static final int CAPACITY = 4;
+
+    private static final String[] URLS = {
+            "http://example.com/clear.png", "http://example.com/clouds.png",
+            "http://example.com/rain.png", "http://example.com/snow.png",
+            "http://example.com/storm.png" };
+
+    private ArtCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = new ArtCache(mContext, CAPACITY * BITMAP_BYTES);
+    }
+
+    private static Bitmap createBitmap() {
+        return Bitmap.createBitmap(SIDE, SIDE, Bitmap.Config.ARGB_8888);
+    }
+
+    private int countResident(int size) {
+        int count = 0;
+        for (String url : URLS) {
+            if (null != mCache.peek(url, size)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void testInsertedArtIsFoundAtItsSizeOnly() {
+        Bitmap bitmap = createBitmap();
+        mCache.put(URLS[0], ArtCache.SIZE_ICON, bitmap);
+
+        assertSame(bitmap, mCache.peek(URLS[0], ArtCache.SIZE_ICON));
+        assertNull("Error: Each size should be cached on its own",
+                mCache.peek(URLS[0], ArtCache.SIZE_ART));
+        assertNull(mCache.peek(URLS[1], ArtCache.SIZE_ICON));
+    }
+
+    public void testLeastRecentlyUsedArtIsEvicted() {
+        for (int i = 0; i < CAPACITY; i++) {
+            mCache.put(URLS[i], ArtCache.SIZE_ICON, createBitmap());
+        }
+        // Touch the oldest so the second one becomes the least recently used
+        assertNotNull(mCache.peek(URLS[0], ArtCache.SIZE_ICON));
+
+        mCache.put(URLS[CAPACITY], ArtCache.SIZE_ICON, createBitmap());
+        assertEquals(CAPACITY, countResident(ArtCache.SIZE_ICON));
+        assertNotNull(mCache.peek(URLS[0], ArtCache.SIZE_ICON));
+        assertNull("Error: The least recently used art should have been evicted",
+                mCache.peek(URLS[1], ArtCache.SIZE_ICON));
+    }
+
+    public void testTrimLevels() {
+        for (int i = 0; i < CAPACITY; i++) {
+            mCache.put(URLS[i], ArtCache.SIZE_ICON, createBitmap());
+        }
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals("Error: Leaving the screen shouldn't drop any art",
+                CAPACITY, countResident(ArtCache.SIZE_ICON));
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(CAPACITY / 2, countResident(ArtCache.SIZE_ICON));
+
+        mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertEquals(0, countResident(ArtCache.SIZE_ICON));
+    }
+}
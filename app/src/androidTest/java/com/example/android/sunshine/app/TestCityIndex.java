@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Checks the bundled city index and measures lookups against a 200k name table.
+ */
+public class TestCityIndex extends AndroidTestCase {
+    private static final String LOG_TAG = TestCityIndex.class.getSimpleName();
+
+    private static final int BENCHMARK_CITIES = 200000;
+    private static final int BENCHMARK_QUERIES = 5000;
+
+    private static CityIndex buildIndex(List<String> names) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CityIndex.write(names, out);
+        return new CityIndex(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    public void testBundledIndex() {
+        CityIndex index = CityIndex.getInstance(mContext);
+        assertNotNull("Error: The city index asset is missing", index);
+        assertTrue(index.size() > 0);
+        assertTrue(index.contains("London,GB"));
+        assertTrue(index.contains("mountain view"));
+    }
+
+    public void testPrefixAndContains() throws IOException {
+        CityIndex index = buildIndex(Arrays.asList(
+                "San Jose,US", "Santiago,CL", "san diego,US", "San Diego,US", "London,GB", "London,CA"));
+        assertEquals("Error: Names differing only in case were not merged", 5, index.size());
+
+        String[] matches = new String[8];
+        assertEquals(2, index.findPrefix("SAN ", matches));
+        assertEquals("san diego,US", matches[0]);
+        assertEquals("San Jose,US", matches[1]);
+        assertEquals(3, index.findPrefix("san", matches));
+        assertEquals(1, index.findPrefix("london, g", matches));
+        assertEquals("London,GB", matches[0]);
+
+        assertTrue(index.contains("london"));
+        assertTrue(index.contains("London , ca"));
+        assertFalse(index.contains("Londn"));
+        assertFalse(index.contains("Lon"));
+        assertFalse(index.contains("London,FR"));
+        assertFalse(index.contains(""));
+    }
+
+    // Benchmark: prefix and exact lookups over 200k names, and the size of the table.
+    public void testLookupLatencyAndSize() throws IOException {
+        Random random = new Random(1);
+        List<String> names = new ArrayList<String>(BENCHMARK_CITIES);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BENCHMARK_CITIES; i++) {
+            sb.setLength(0);
+            sb.append((char) ('A' + random.nextInt(26)));
+            for (int j = 4 + random.nextInt(10); j > 0; j--) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            sb.append(',').append((char) ('A' + random.nextInt(26)))
+                    .append((char) ('A' + random.nextInt(26)));
+            names.add(sb.toString());
+        }
+        CityIndex index = buildIndex(names);
+
+        String[] matches = new String[8];
+        long start = System.nanoTime();
+        for (int q = 0; q < BENCHMARK_QUERIES; q++) {
+            index.findPrefix(names.get(random.nextInt(names.size())).substring(0, 3), matches);
+        }
+        long prefixNanos = (System.nanoTime() - start) / BENCHMARK_QUERIES;
+
+        start = System.nanoTime();
+        for (int q = 0; q < BENCHMARK_QUERIES; q++) {
+            assertTrue(index.contains(names.get(random.nextInt(names.size()))));
+        }
+        long containsNanos = (System.nanoTime() - start) / BENCHMARK_QUERIES;
+
+        Log.i(LOG_TAG, "CityIndex: " + index.size() + " names in " + index.getByteSize() +
+                " bytes (" + index.getByteSize() / index.size() + " per name); prefix lookup " +
+                prefixNanos / 1000 + "us, exact lookup " + containsNanos / 1000 + "us");
+        assertTrue("Error: Prefix lookup took " + prefixNanos + "ns", prefixNanos < 1000000);
+        assertTrue("Error: Exact lookup took " + containsNanos + "ns", containsNanos < 1000000);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that back-to-back updates reach every consumer once, merged, with the data read once
+    for all of them.
+ */
+public class TestDataUpdateDispatcher extends AndroidTestCase {
+    private static final long DAY = 1000*60*60*24;
+    private static final long TODAY = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+    private static class RecordingConsumer implements DataUpdateDispatcher.Consumer {
+        final List<DataUpdateDispatcher.DataUpdate> mUpdates =
+                new ArrayList<DataUpdateDispatcher.DataUpdate>();
+        final CountDownLatch mFirstUpdate = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onDataUpdated(Context context,
+                                               DataUpdateDispatcher.DataUpdate update) {
+            mUpdates.add(update);
+            mFirstUpdate.countDown();
+        }
+
+        // mUpdates is written on the dispatcher's thread, so the test reads a copy under the lock
+        synchronized List<DataUpdateDispatcher.DataUpdate> getUpdates() {
+            return new ArrayList<DataUpdateDispatcher.DataUpdate>(mUpdates);
+        }
+    }
+
+    public void testBackToBackUpdatesAreMerged() throws InterruptedException {
+        RecordingConsumer first = new RecordingConsumer();
+        RecordingConsumer second = new RecordingConsumer();
+        DataUpdateDispatcher dispatcher = new DataUpdateDispatcher(mContext, first, second);
+        try {
+            dispatcher.onDataUpdated("94043", TODAY, TODAY + 6 * DAY);
+            dispatcher.onDataUpdated("94043", TODAY + 2 * DAY, TODAY + 13 * DAY);
+            dispatcher.onDataUpdated("10001", TODAY, TODAY);
+
+            assertTrue("Error: The update never arrived", first.mFirstUpdate.await(
+                    DataUpdateDispatcher.MAX_DELAY_MILLIS * 2, TimeUnit.MILLISECONDS));
+            assertTrue(second.mFirstUpdate.await(1, TimeUnit.SECONDS));
+            // Anything left over would have arrived by now
+            Thread.sleep(DataUpdateDispatcher.DEBOUNCE_MILLIS * 2);
+
+            List<DataUpdateDispatcher.DataUpdate> firstUpdates = first.getUpdates();
+            List<DataUpdateDispatcher.DataUpdate> secondUpdates = second.getUpdates();
+            assertEquals("Error: The updates weren't merged", 1, firstUpdates.size());
+            assertEquals(1, secondUpdates.size());
+            DataUpdateDispatcher.DataUpdate update = firstUpdates.get(0);
+            assertSame("Error: Consumers should share one read", update, secondUpdates.get(0));
+
+            assertTrue(update.changed("94043"));
+            assertTrue(update.changed("10001"));
+            assertFalse(update.changed("90210"));
+            assertTrue(update.changed("94043", TODAY + 13 * DAY));
+            assertTrue(update.changed("10001", TODAY + 13 * DAY));
+            assertFalse(update.changed("94043", TODAY + 14 * DAY));
+            assertFalse(update.changed("94043", TODAY - DAY));
+        } finally {
+            dispatcher.quit();
+        }
+    }
+
+    public void testAwaitIdleReturnsOnceDelivered() {
+        RecordingConsumer consumer = new RecordingConsumer();
+        DataUpdateDispatcher dispatcher = new DataUpdateDispatcher(mContext, consumer);
+        try {
+            dispatcher.awaitIdle();
+            assertEquals("Error: Nothing was pending", 0, consumer.getUpdates().size());
+
+            dispatcher.onDataUpdated("94043", TODAY, TODAY);
+            dispatcher.awaitIdle();
+            assertEquals("Error: The update should be delivered by the time awaitIdle returns",
+                    1, consumer.getUpdates().size());
+        } finally {
+            dispatcher.quit();
+        }
+    }
+
+    public void testLaterUpdatesAreDispatchedAgain() throws InterruptedException {
+        RecordingConsumer consumer = new RecordingConsumer();
+        DataUpdateDispatcher dispatcher = new DataUpdateDispatcher(mContext, consumer);
+        try {
+            dispatcher.onDataUpdated("94043", TODAY, TODAY);
+            assertTrue(consumer.mFirstUpdate.await(
+                    DataUpdateDispatcher.MAX_DELAY_MILLIS * 2, TimeUnit.MILLISECONDS));
+            dispatcher.onDataUpdated("94043", TODAY + DAY, TODAY + DAY);
+            dispatcher.awaitIdle();
+
+            List<DataUpdateDispatcher.DataUpdate> updates = consumer.getUpdates();
+            assertEquals(2, updates.size());
+            assertFalse("Error: The second update shouldn't carry the first one's dates",
+                    updates.get(1).changed("94043", TODAY));
+        } finally {
+            dispatcher.quit();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.net.Uri;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    On two-pane layouts, stepping through the list day by day should rebind the one detail pane
+    in place from the forecast in memory: no fragment transaction and no loader.  Does nothing on
+    phone layouts.
+ */
+public class TestDetailRebind extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final String LOG_TAG = TestDetailRebind.class.getSimpleName();
+
+    private static final int STEPS = 20;
+
+    public TestDetailRebind() {
+        super(MainActivity.class);
+    }
+
+    public void testSelectionRebindsInPlace() throws Throwable {
+        final MainActivity activity = getActivity();
+        if (null == activity.findViewById(R.id.weather_detail_container)) {
+            Log.i(LOG_TAG, "Single pane layout; nothing to test");
+            return;
+        }
+
+        final Forecast forecast = ForecastRepository.getInstance(activity).getForecast();
+        if (forecast.getCount() < 2) {
+            Log.i(LOG_TAG, "Fewer than two days synced; nothing to test");
+            return;
+        }
+
+        final Fragment[] detail = new Fragment[1];
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                FragmentManager fragmentManager = activity.getSupportFragmentManager();
+                activity.onItemSelected(dayUri(forecast, 0), null);
+                fragmentManager.executePendingTransactions();
+                detail[0] = fragmentManager.findFragmentByTag(MainActivity.DETAILFRAGMENT_TAG);
+                assertNotNull(detail[0]);
+
+                for (int i = 0; i < STEPS; i++) {
+                    activity.onItemSelected(dayUri(forecast, (i + 1) % forecast.getCount()), null);
+                    assertFalse("Error: Picking a day committed a fragment transaction",
+                            fragmentManager.executePendingTransactions());
+                    assertSame("Error: Picking a day replaced the detail pane", detail[0],
+                            fragmentManager.findFragmentByTag(MainActivity.DETAILFRAGMENT_TAG));
+                    assertNull("Error: Picking a synced day started a loader",
+                            detail[0].getLoaderManager().getLoader(DetailFragment.DETAIL_LOADER));
+                }
+            }
+        });
+    }
+
+    private static Uri dayUri(Forecast forecast, int day) {
+        return WeatherEntry.buildWeatherLocationWithDate(forecast.getLocationSetting(),
+                forecast.getDate(day));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Checks that binding a forecast row allocates nothing once rows are built, and measures how
+    fast rows can be bound while "scrolling" through the list.
+
+    The views are stand-ins that only record what they are given, so that the numbers cover the
+    adapter's own work and not TextView layout.
+ */
+public class TestForecastAdapterBind extends AndroidTestCase {
+    private static final String LOG_TAG = TestForecastAdapterBind.class.getSimpleName();
+
+    // Less than a page, so binding never asks the paging source for more.
+    private static final int ROWS = ForecastPagingSource.PAGE_SIZE - 5;
+    private static final int WARM_UP_BINDS = 200;
+    private static final int MEASURED_BINDS = 10000;
+
+    private ForecastAdapter mAdapter;
+    private ForecastAdapter.ForecastAdapterViewHolder[] mHolders;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The built-in art pack binds local resources rather than going through Glide.
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_art_pack_key),
+                        mContext.getString(R.string.pref_art_pack_sunshine))
+                .commit();
+        SunshineSettings.refresh(mContext);
+
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long millisecondsInADay = 1000*60*60*24;
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[] { i + 1, today + i * millisecondsInADay, "Clear",
+                    20.0 + i, 10.0 - i, "99705", 800 + (i % 5) * 100,
+                    37.386, -122.0838 });
+        }
+
+        mAdapter = new ForecastAdapter(mContext, new ForecastAdapter.ForecastAdapterOnClickHandler() {
+            @Override
+            public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+            }
+        }, new View(mContext), AbsListView.CHOICE_MODE_NONE);
+        mAdapter.swapCursor(cursor);
+        assertEquals(ROWS, mAdapter.getItemCount());
+
+        // A handful of recycled holders, as a RecyclerView would have on screen.
+        mHolders = new ForecastAdapter.ForecastAdapterViewHolder[6];
+        for (int i = 0; i < mHolders.length; i++) {
+            mHolders[i] = mAdapter.new ForecastAdapterViewHolder(createItemView(mContext));
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mAdapter.swapCursor(null);
+        super.tearDown();
+    }
+
+    private static View createItemView(Context context) {
+        FrameLayout itemView = new FrameLayout(context);
+        ImageView icon = new RecordingImageView(context);
+        icon.setId(R.id.list_item_icon);
+        itemView.addView(icon);
+        int[] textIds = { R.id.list_item_date_textview, R.id.list_item_forecast_textview,
+                R.id.list_item_high_textview, R.id.list_item_low_textview };
+        for (int id : textIds) {
+            TextView text = new RecordingTextView(context);
+            text.setId(id);
+            itemView.addView(text);
+        }
+        return itemView;
+    }
+
+    private void bind(int binds) {
+        for (int i = 0; i < binds; i++) {
+            mAdapter.onBindViewHolder(mHolders[i % mHolders.length], i % ROWS);
+        }
+    }
+
+    public void testBindIsAllocationFree() {
+        bind(WARM_UP_BINDS);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        bind(MEASURED_BINDS);
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: Binding allocated " + allocations + " objects over " +
+                MEASURED_BINDS + " binds", 0, allocations);
+    }
+
+    public void testBindShowsPrecomputedRow() {
+        ForecastAdapter.ForecastAdapterViewHolder holder = mHolders[0];
+        mAdapter.onBindViewHolder(holder, 1);
+        ForecastRow row = ForecastRow.fromCursor(mContext, mAdapter.getCursor())[1];
+        assertEquals(row.mDay, holder.mDateView.getText());
+        assertEquals(row.mDescription, holder.mDescriptionView.getText());
+        assertEquals(row.mHigh, holder.mHighTempView.getText());
+        assertEquals(row.mLowA11y, holder.mLowTempView.getContentDescription());
+    }
+
+    // Benchmark: bind throughput while cycling through the list the way a scroll recycles views.
+    public void testScrollBindThroughput() {
+        bind(WARM_UP_BINDS);
+        long start = System.nanoTime();
+        bind(MEASURED_BINDS);
+        long nanosPerBind = (System.nanoTime() - start) / MEASURED_BINDS;
+        Log.i(LOG_TAG, "ForecastAdapter: " + nanosPerBind + "ns per bind over " +
+                MEASURED_BINDS + " binds");
+        // A 60fps frame is 16ms; a screenful of rows should cost a tiny fraction of that.
+        assertTrue("Error: Binding took " + nanosPerBind + "ns per row", nanosPerBind < 100000);
+    }
+
+    private static class RecordingTextView extends TextView {
+        private CharSequence mText;
+        private CharSequence mContentDescription;
+
+        RecordingTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setText(CharSequence text, BufferType type) {
+            mText = text;
+        }
+
+        @Override
+        public CharSequence getText() {
+            return mText;
+        }
+
+        @Override
+        public void setContentDescription(CharSequence contentDescription) {
+            mContentDescription = contentDescription;
+        }
+
+        @Override
+        public CharSequence getContentDescription() {
+            return mContentDescription;
+        }
+    }
+
+    private static class RecordingImageView extends ImageView {
+        RecordingImageView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setImageResource(int resId) {
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Applies the notifications a ForecastDiff dispatches to a model of the list and checks that
+    the model ends up matching the new rows, with only the rows that changed rebound.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+    private static final long DAY = 1000*60*60*24;
+    private static final long TODAY = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+    // What the list shows at each position; null marks a row that needs binding.
+    private final List<ForecastRow> mShown = new ArrayList<ForecastRow>();
+
+    private final RecyclerView.Adapter mAdapter = new RecyclerView.Adapter() {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mShown.size();
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                for (int i = positionStart; i < positionStart + itemCount; i++) mShown.set(i, null);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                for (int i = 0; i < itemCount; i++) mShown.add(positionStart, null);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                for (int i = 0; i < itemCount; i++) mShown.remove(positionStart);
+            }
+        });
+    }
+
+    private ForecastRow[] createRows(String location, int firstDay, int... weatherIds) {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS);
+        for (int i = 0; i < weatherIds.length; i++) {
+            cursor.addRow(new Object[] { i + 1, TODAY + (firstDay + i) * DAY, "Clear",
+                    20.0, 10.0, location, weatherIds[i], 37.386, -122.0838 });
+        }
+        return ForecastRow.fromCursor(mContext, cursor);
+    }
+
+    // Shows oldRows, applies the diff to newRows and returns how many rows were rebound.
+    private int apply(ForecastRow[] oldRows, ForecastRow[] newRows, boolean firstRowIsSpecial) {
+        mShown.clear();
+        if (null != oldRows) {
+            for (ForecastRow row : oldRows) mShown.add(row);
+        }
+        ForecastDiff.compute(oldRows, newRows).dispatchTo(mAdapter, firstRowIsSpecial);
+
+        assertEquals(newRows.length, mShown.size());
+        int rebound = 0;
+        for (int i = 0; i < newRows.length; i++) {
+            ForecastRow shown = mShown.get(i);
+            if (null == shown) {
+                rebound++;
+            } else {
+                assertEquals("Error: Row " + i + " shows the wrong day", 0, shown.compareKey(newRows[i]));
+                assertTrue("Error: Row " + i + " was not rebound", shown.hasSameContent(newRows[i]));
+            }
+        }
+        return rebound;
+    }
+
+    public void testNothingChanged() {
+        ForecastRow[] rows = createRows("99705", 0, 800, 801, 802);
+        assertTrue(ForecastDiff.compute(rows, createRows("99705", 0, 800, 801, 802)).isEmpty());
+        assertEquals(0, apply(rows, createRows("99705", 0, 800, 801, 802), true));
+    }
+
+    public void testOneDayChanged() {
+        assertEquals("Error: A one day change should rebind one row", 1,
+                apply(createRows("99705", 0, 800, 801, 802, 803),
+                        createRows("99705", 0, 800, 801, 500, 803), true));
+    }
+
+    public void testDayRolledOver() {
+        // Yesterday is gone and a new day was added at the end.  The new first row needs the
+        // today layout, but only when the list uses one.
+        int rebound = apply(createRows("99705", -1, 800, 801, 802, 803),
+                createRows("99705", 0, 801, 802, 803, 804), true);
+        assertEquals(2, rebound);
+        assertEquals(1, apply(createRows("99705", -1, 800, 801, 802, 803),
+                createRows("99705", 0, 801, 802, 803, 804), false));
+    }
+
+    public void testDaysAddedInFront() {
+        // The inserted row, plus the old first row that loses the today layout.
+        assertEquals(2, apply(createRows("99705", 1, 801, 802),
+                createRows("99705", 0, 800, 801, 802), true));
+    }
+
+    public void testLocationChanged() {
+        assertEquals(2, apply(createRows("99705", 0, 800, 801, 802),
+                createRows("94043", 0, 800, 801), true));
+    }
+
+    public void testFromAndToEmpty() {
+        assertEquals(3, apply(null, createRows("99705", 0, 800, 801, 802), true));
+        assertEquals(0, apply(createRows("99705", 0, 800, 801, 802), new ForecastRow[0], true));
+    }
+
+    public void testAppliesOnlyToItsBase() {
+        ForecastRow[] rows = createRows("99705", 0, 800);
+        ForecastDiff diff = ForecastDiff.compute(rows, createRows("99705", 0, 801));
+        assertTrue(diff.appliesTo(rows));
+        assertFalse(diff.appliesTo(createRows("99705", 0, 800)));
+    }
+}
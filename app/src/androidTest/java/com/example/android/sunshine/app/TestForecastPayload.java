@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.CurrentConditionsFile;
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.Arrays;
+
+/*
+    Checks the phone to watch forecast payload, and measures its size against the single day
+    DataMap it replaced and how long the watch takes to decode it.
+ */
+public class TestForecastPayload extends AndroidTestCase {
+    private static final String LOG_TAG = TestForecastPayload.class.getSimpleName();
+
+    private static final int FIRST_DAY = 2457590;
+    private static final String LOCATION = "MOUNTAIN VIEW, CA";
+    private static final int DECODES = 100000;
+
+    private static byte[] buildPayload(int days) {
+        ForecastPayload.Writer writer = new ForecastPayload.Writer();
+        for (int day = 0; day < days; day++) {
+            writer.addDay(FIRST_DAY + day, LOCATION, 800 + day, 21.37 - day, -3.04 + day);
+        }
+        return writer.toByteArray();
+    }
+
+    public void testRoundTrip() {
+        ForecastPayload forecast = new ForecastPayload();
+        assertTrue(forecast.decode(buildPayload(5)));
+
+        assertEquals(5, forecast.getDayCount());
+        for (int day = 0; day < 5; day++) {
+            assertEquals(FIRST_DAY + day, forecast.getJulianDay(day));
+            assertEquals(800 + day, forecast.getWeatherId(day));
+            assertEquals(21.37 - day, forecast.getMaxTemp(day), 0.05);
+            assertEquals(-3.04 + day, forecast.getMinTemp(day), 0.05);
+            assertEquals(LOCATION, forecast.getLocation(day));
+        }
+
+        String location = forecast.getLocation(0);
+        assertTrue(forecast.decode(buildPayload(3)));
+        assertEquals(3, forecast.getDayCount());
+        assertSame("Error: An unchanged location shouldn't be decoded again",
+                location, forecast.getLocation(0));
+    }
+
+    public void testTodayMovesOnAtMidnight() {
+        ForecastPayload forecast = new ForecastPayload();
+        assertTrue(forecast.decode(buildPayload(5)));
+
+        assertEquals(0, forecast.findDay(FIRST_DAY - 1));
+        assertEquals(0, forecast.findDay(FIRST_DAY));
+        assertEquals(1, forecast.findDay(FIRST_DAY + 1));
+        assertEquals(4, forecast.findDay(FIRST_DAY + 4));
+        assertEquals("Error: The forecast doesn't reach that far",
+                -1, forecast.findDay(FIRST_DAY + 5));
+    }
+
+    public void testRejectsMalformedPayloads() {
+        byte[] payload = buildPayload(5);
+        ForecastPayload forecast = new ForecastPayload();
+        assertTrue(forecast.decode(buildPayload(3)));
+
+        for (int length = 0; length < payload.length; length++) {
+            assertFalse("Error: Accepted a payload cut to " + length + " bytes",
+                    forecast.decode(Arrays.copyOf(payload, length)));
+            assertEquals("Error: A rejected payload should leave the last forecast alone",
+                    3, forecast.getDayCount());
+        }
+        byte[] otherVersion = payload.clone();
+        otherVersion[0] = ForecastPayload.VERSION + 1;
+        assertFalse(forecast.decode(otherVersion));
+        assertFalse(forecast.decode(null));
+        assertEquals(3, forecast.getDayCount());
+        assertEquals(FIRST_DAY + 2, forecast.getJulianDay(2));
+    }
+
+    public void testWriterRejectsDaysOutOfOrder() {
+        ForecastPayload.Writer writer = new ForecastPayload.Writer();
+        writer.addDay(FIRST_DAY, LOCATION, 800, 20, 10);
+        try {
+            writer.addDay(FIRST_DAY, LOCATION, 800, 20, 10);
+            fail("Error: Accepted the same day twice");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testPayloadSize() {
+        DataMap legacy = new DataMap();
+        legacy.putInt("com.example.key.weather_id", 800);
+        legacy.putDouble("com.example.key.max_temp", 21.37);
+        legacy.putDouble("com.example.key.min_temp", -3.04);
+        legacy.putString("com.example.key.location", LOCATION);
+        int legacyBytes = legacy.toByteArray().length;
+
+        DataMap current = new DataMap();
+        current.putByteArray("forecast", buildPayload(5));
+        int currentBytes = current.toByteArray().length;
+
+        Log.i(LOG_TAG, "One day as a DataMap: " + legacyBytes + " bytes; five days as a payload: "
+                + buildPayload(5).length + " bytes, " + currentBytes + " in its DataMap");
+        assertTrue("Error: Five days should take less than the one day did",
+                currentBytes < legacyBytes);
+    }
+
+    public void testDecodeTime() {
+        byte[] payload = buildPayload(CurrentConditionsFile.DAYS);
+        ForecastPayload forecast = new ForecastPayload();
+        // Warm up
+        for (int i = 0; i < DECODES; i++) {
+            forecast.decode(payload);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < DECODES; i++) {
+            forecast.decode(payload);
+        }
+        long nanos = (System.nanoTime() - start) / DECODES;
+        Log.i(LOG_TAG, "Decoding " + payload.length + " bytes takes " + nanos + "ns");
+        assertTrue(forecast.getDayCount() > 0);
+    }
+}
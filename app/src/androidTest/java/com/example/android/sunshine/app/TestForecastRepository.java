@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.CurrentConditionsFile;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the shared forecast matches the provider, is reused until the data changes, and
+    is reloaded after it does.
+ */
+public class TestForecastRepository extends AndroidTestCase {
+    private static final String TEST_LOCATION = "99705";
+    private static final long DAY = 1000*60*60*24;
+    private static final long TODAY = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+    private String mSavedLocation;
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_location_key);
+        mSavedLocation = prefs.getString(key, null);
+        prefs.edit().putString(key, TEST_LOCATION).commit();
+        SunshineSettings.refresh(mContext);
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+
+        // Yesterday should not be part of the forecast.
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, new ContentValues[] {
+                createWeatherValues(-1, 800), createWeatherValues(0, 801),
+                createWeatherValues(1, 500), createWeatherValues(2, 600) });
+        // Don't let a forecast left over from the previous test through before the provider's
+        // notification arrives.
+        ForecastRepository.getInstance(mContext).invalidate();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), mSavedLocation)
+                .commit();
+        SunshineSettings.refresh(mContext);
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private ContentValues createWeatherValues(int day, int weatherId) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        values.put(WeatherEntry.COLUMN_DATE, TODAY + day * DAY);
+        values.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 65 + day);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        return values;
+    }
+
+    public void testForecastMatchesProvider() {
+        Forecast forecast = ForecastRepository.getInstance(mContext).getForecast();
+        assertEquals(TEST_LOCATION, forecast.getLocationSetting());
+        assertEquals("Error: The forecast should start today", 3, forecast.getCount());
+        assertEquals(64.7488, forecast.getCoordLat(), 1e-9);
+
+        int tomorrow = forecast.indexOfDate(TODAY + DAY);
+        assertEquals(1, tomorrow);
+        assertEquals(500, forecast.getWeatherId(tomorrow));
+        assertEquals(76.0, forecast.getMaxTemp(tomorrow), 1e-9);
+        assertEquals(66.0, forecast.getMinTemp(tomorrow), 1e-9);
+        assertEquals(1.3f, forecast.getPressure(tomorrow), 1e-6f);
+        assertEquals("Asteroids", forecast.getShortDesc(tomorrow));
+        assertEquals(-1, forecast.indexOfDate(TODAY - DAY));
+    }
+
+    // The provider's change notifications for the rows inserted in setUp arrive asynchronously,
+    // each one marking the forecast stale; wait for them to stop.
+    private void waitForQuiet(final ForecastRepository repository) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return repository.getForecast() == repository.getForecast();
+            }
+        }.run();
+    }
+
+    public void testForecastIsShared() {
+        ForecastRepository repository = ForecastRepository.getInstance(mContext);
+        waitForQuiet(repository);
+        Forecast forecast = repository.getForecast();
+        assertSame("Error: An unchanged forecast was queried again", forecast, repository.getForecast());
+        assertSame(forecast, repository.peekForecast());
+    }
+
+    public void testReloadsAfterChange() {
+        final ForecastRepository repository = ForecastRepository.getInstance(mContext);
+        waitForQuiet(repository);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, createWeatherValues(3, 700));
+
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return repository.getForecast().getCount() == 4;
+            }
+        }.run();
+        Forecast after = repository.getForecast();
+        assertEquals(700, after.getWeatherId(after.indexOfDate(TODAY + 3 * DAY)));
+    }
+
+    public void testConditionsFileForecast() {
+        assertTrue(CurrentConditionsFile.update(mContext, TEST_LOCATION));
+        Forecast partial = Forecast.fromConditionsFile(CurrentConditionsFile.open(mContext),
+                TEST_LOCATION, TODAY);
+        Forecast full = ForecastRepository.getInstance(mContext).getForecast();
+        assertEquals(full.getCount(), partial.getCount());
+        for (int i = 0; i < full.getCount(); i++) {
+            assertEquals(full.getDate(i), partial.getDate(i));
+            assertEquals(full.getWeatherId(i), partial.getWeatherId(i));
+            assertEquals(full.getMaxTemp(i), partial.getMaxTemp(i), 1e-3);
+            assertEquals(full.getShortDesc(i), partial.getShortDesc(i));
+        }
+        assertNull("Error: A forecast was built for a location the file doesn't have",
+                Forecast.fromConditionsFile(CurrentConditionsFile.open(mContext), "nowhere", TODAY));
+        CurrentConditionsFile.delete(mContext);
+    }
+
+    public void testListCursorMatchesQuery() {
+        Cursor expected = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TEST_LOCATION, TODAY),
+                ForecastFragment.FORECAST_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        Cursor actual = ForecastRepository.getInstance(mContext).getForecast().newListCursor();
+        assertEquals(expected.getCount(), actual.getCount());
+        while (expected.moveToNext()) {
+            assertTrue(actual.moveToNext());
+            assertEquals(expected.getLong(ForecastFragment.COL_WEATHER_ID),
+                    actual.getLong(ForecastFragment.COL_WEATHER_ID));
+            assertEquals(expected.getLong(ForecastFragment.COL_WEATHER_DATE),
+                    actual.getLong(ForecastFragment.COL_WEATHER_DATE));
+            assertEquals(expected.getString(ForecastFragment.COL_WEATHER_DESC),
+                    actual.getString(ForecastFragment.COL_WEATHER_DESC));
+            assertEquals(expected.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    actual.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            assertEquals(expected.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                    actual.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            assertEquals(expected.getString(ForecastFragment.COL_LOCATION_SETTING),
+                    actual.getString(ForecastFragment.COL_LOCATION_SETTING));
+            assertEquals(expected.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    actual.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID));
+            assertEquals(expected.getString(ForecastFragment.COL_COORD_LAT),
+                    actual.getString(ForecastFragment.COL_COORD_LAT));
+        }
+        expected.close();
+        actual.close();
+    }
+}
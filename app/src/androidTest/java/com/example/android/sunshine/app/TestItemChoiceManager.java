@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Bundle;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+
+import java.util.Arrays;
+
+/*
+    Checks that selections on a long multi-select list follow their items through insertions,
+    removals and moves, and that with an id index this takes one lookup per checked item.
+ */
+public class TestItemChoiceManager extends AndroidTestCase {
+    private static final String LOG_TAG = TestItemChoiceManager.class.getSimpleName();
+
+    private static final int ITEM_COUNT = 10000;
+
+    /*
+        A list of ids.  Keeps an id index like ForecastAdapter's unless told not to, and counts
+        how it is asked about ids.
+     */
+    private static class IdAdapter extends RecyclerView.Adapter
+            implements ItemChoiceManager.PositionLookup {
+        final boolean mIndexed;
+        final ItemIdIndex mPositions = new ItemIdIndex();
+        long[] mIds = new long[0];
+        // Whether ids that aren't in mIds may still be loaded
+        boolean mMoreToLoad;
+        int mIdCalls;
+        int mLookupCalls;
+
+        IdAdapter(boolean indexed) {
+            mIndexed = indexed;
+            setHasStableIds(true);
+        }
+
+        void setIds(long[] ids) {
+            mIds = ids;
+            mPositions.clear();
+            for (int position = 0; position < ids.length; position++) {
+                mPositions.put(ids[position], position);
+            }
+            mIdCalls = mLookupCalls = 0;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.length;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            mIdCalls++;
+            return mIds[position];
+        }
+
+        @Override
+        public int getPositionForId(long id) {
+            if (!mIndexed) throw new UnsupportedOperationException();
+            mLookupCalls++;
+            int position = mPositions.get(id);
+            return RecyclerView.NO_POSITION == position && mMoreToLoad
+                    ? ItemChoiceManager.PositionLookup.NOT_LOADED : position;
+        }
+    }
+
+    // ItemChoiceManager only asks adapters that implement the interface.
+    private static class UnindexedAdapter extends RecyclerView.Adapter {
+        final IdAdapter mIds = new IdAdapter(false);
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.getItemCount();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIds.getItemId(position);
+        }
+    }
+
+    // Scattered ids, so that neither the index nor the check states see a tidy sequence.
+    private static long[] createIds(int first, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = (first + i) * 0x5DEECE66DL;
+        }
+        return ids;
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] ids = new long[a.length + b.length];
+        System.arraycopy(a, 0, ids, 0, a.length);
+        System.arraycopy(b, 0, ids, a.length, b.length);
+        return ids;
+    }
+
+    private static int checkedCount(ItemChoiceManager icm, int itemCount) {
+        int count = 0;
+        for (int position = 0; position < itemCount; position++) {
+            if (icm.isItemChecked(position)) count++;
+        }
+        return count;
+    }
+
+    public void testIdIndex() {
+        ItemIdIndex index = new ItemIdIndex();
+        long[] ids = createIds(-ITEM_COUNT / 2, ITEM_COUNT);
+        for (int i = 0; i < ids.length; i++) index.put(ids[i], i);
+        assertEquals(ITEM_COUNT, index.size());
+        for (int i = 0; i < ids.length; i += 2) index.remove(ids[i]);
+        assertEquals(ITEM_COUNT / 2, index.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Error: Wrong position for id " + ids[i],
+                    i % 2 == 0 ? RecyclerView.NO_POSITION : i, index.get(ids[i]));
+        }
+        index.put(ids[1], 42);
+        assertEquals(42, index.get(ids[1]));
+        index.clear();
+        assertEquals(RecyclerView.NO_POSITION, index.get(ids[1]));
+    }
+
+    public void testSelectionFollowsInsertedRows() {
+        IdAdapter adapter = new IdAdapter(true);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        long[] ids = createIds(0, ITEM_COUNT);
+        adapter.setIds(ids);
+        for (int position = 0; position < ITEM_COUNT; position += 3) {
+            icm.setItemChecked(position, true);
+        }
+        int checked = checkedCount(icm, ITEM_COUNT);
+
+        int inserted = 500;
+        adapter.setIds(concat(createIds(-inserted, inserted), ids));
+        adapter.notifyItemRangeInserted(0, inserted);
+
+        assertEquals("Error: Every checked id should be looked up once, and only once",
+                checked, adapter.mLookupCalls);
+        assertEquals("Error: No id should be searched for", 0, adapter.mIdCalls);
+        assertEquals(checked, checkedCount(icm, ITEM_COUNT + inserted));
+        for (int position = 0; position < ITEM_COUNT; position++) {
+            assertEquals("Error: Selection didn't move with item " + position,
+                    position % 3 == 0, icm.isItemChecked(position + inserted));
+        }
+        assertEquals(inserted, icm.getSelectedItemPosition());
+    }
+
+    public void testRemovedRowsAreUnchecked() {
+        IdAdapter adapter = new IdAdapter(true);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        long[] ids = createIds(0, ITEM_COUNT);
+        adapter.setIds(ids);
+        for (int position = 0; position < ITEM_COUNT; position++) {
+            icm.setItemChecked(position, true);
+        }
+        icm.setItemChecked(ITEM_COUNT - 1, false);
+
+        // Drop the first half.
+        long[] kept = new long[ITEM_COUNT / 2];
+        System.arraycopy(ids, ITEM_COUNT / 2, kept, 0, kept.length);
+        adapter.setIds(kept);
+        adapter.notifyItemRangeRemoved(0, ITEM_COUNT / 2);
+
+        assertEquals(ITEM_COUNT - 1, adapter.mLookupCalls);
+        assertEquals(kept.length - 1, checkedCount(icm, kept.length));
+        assertFalse(icm.isItemChecked(kept.length - 1));
+
+        // The ids that went away don't come back with their old rows.
+        adapter.setIds(ids);
+        adapter.notifyDataSetChanged();
+        assertEquals(kept.length - 1, adapter.mLookupCalls);
+        assertFalse(icm.isItemChecked(0));
+        assertTrue(icm.isItemChecked(ITEM_COUNT / 2));
+    }
+
+    public void testSelectionWaitsForItsRowsToLoad() {
+        IdAdapter adapter = new IdAdapter(true);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        long[] ids = createIds(0, 40);
+        adapter.setIds(ids);
+        icm.setItemChecked(30, true);
+
+        // Only the first page is loaded again, as after a swap.
+        adapter.mMoreToLoad = true;
+        adapter.setIds(Arrays.copyOf(ids, 20));
+        adapter.notifyDataSetChanged();
+        assertEquals("Error: A row that isn't loaded has no position to select",
+                RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+
+        adapter.setIds(ids);
+        adapter.notifyItemRangeInserted(20, 20);
+        assertEquals("Error: The selection should come back with its row",
+                30, icm.getSelectedItemPosition());
+
+        // Once everything is loaded, an id that isn't there is gone for good.
+        adapter.mMoreToLoad = false;
+        adapter.setIds(Arrays.copyOf(ids, 20));
+        adapter.notifyDataSetChanged();
+        adapter.setIds(ids);
+        adapter.notifyItemRangeInserted(20, 20);
+        assertEquals(RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+    }
+
+    public void testSingleChoice() {
+        IdAdapter adapter = new IdAdapter(true);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        long[] ids = createIds(0, ITEM_COUNT);
+        adapter.setIds(ids);
+        icm.setItemChecked(10, true);
+        icm.setItemChecked(5000, true);
+        assertEquals(1, checkedCount(icm, ITEM_COUNT));
+
+        // Reverse the list.
+        long[] reversed = new long[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) reversed[i] = ids[ITEM_COUNT - 1 - i];
+        adapter.setIds(reversed);
+        adapter.notifyDataSetChanged();
+        assertEquals(ITEM_COUNT - 1 - 5000, icm.getSelectedItemPosition());
+    }
+
+    public void testSaveAndRestore() {
+        IdAdapter adapter = new IdAdapter(true);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        long[] ids = createIds(0, ITEM_COUNT);
+        adapter.setIds(ids);
+        for (int position = 1; position < ITEM_COUNT; position += 7) {
+            icm.setItemChecked(position, true);
+        }
+        Bundle state = new Bundle();
+        icm.onSaveInstanceState(state);
+
+        IdAdapter restoredAdapter = new IdAdapter(true);
+        ItemChoiceManager restored = new ItemChoiceManager(restoredAdapter);
+        restored.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        restored.onRestoreInstanceState(state);
+        restoredAdapter.setIds(concat(createIds(-1, 1), ids));
+        restoredAdapter.notifyItemInserted(0);
+        for (int position = 0; position < ITEM_COUNT; position++) {
+            assertEquals(position % 7 == 1, restored.isItemChecked(position + 1));
+        }
+    }
+
+    public void testUnindexedAdapterSearchesNearby() {
+        UnindexedAdapter adapter = new UnindexedAdapter();
+        adapter.setHasStableIds(true);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        long[] ids = createIds(0, ITEM_COUNT);
+        adapter.mIds.setIds(ids);
+        icm.setItemChecked(100, true);
+        icm.setItemChecked(9000, true);
+
+        adapter.mIds.setIds(concat(createIds(-5, 5), ids));
+        adapter.notifyItemRangeInserted(0, 5);
+        assertTrue(icm.isItemChecked(105));
+        assertTrue(icm.isItemChecked(9005));
+        assertEquals(2, checkedCount(icm, ITEM_COUNT + 5));
+    }
+
+    /*
+        Not a pass/fail limit on speed, but logs what a change notification costs with every
+        row of the list checked.
+     */
+    public void testConfirmCost() {
+        IdAdapter adapter = new IdAdapter(true);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        adapter.setIds(createIds(0, ITEM_COUNT));
+        for (int position = 0; position < ITEM_COUNT; position++) {
+            icm.setItemChecked(position, true);
+        }
+
+        final int runs = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            adapter.notifyDataSetChanged();
+        }
+        long nanos = (System.nanoTime() - start) / runs;
+        Log.i(LOG_TAG, "Confirming " + ITEM_COUNT + " checked rows: " + nanos / 1000 + "us");
+        assertEquals(ITEM_COUNT * runs, adapter.mLookupCalls);
+        assertEquals(ITEM_COUNT, checkedCount(icm, ITEM_COUNT));
+    }
+}
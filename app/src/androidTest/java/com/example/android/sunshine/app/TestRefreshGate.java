@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+public class TestRefreshGate extends AndroidTestCase {
+    private static final String CONSUMER = "test_consumer";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getSharedPreferences("refresh_gate", 0).edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getSharedPreferences("refresh_gate", 0).edit().clear().commit();
+        super.tearDown();
+    }
+
+    private static long hash(int weatherId, double high, double low, String location) {
+        return new RefreshGate.Hasher().add(weatherId).add(high).add(low).add(location).get();
+    }
+
+    public void testHasherSeesEveryValue() {
+        long hash = hash(800, 21.0, 12.0, "94043");
+        assertEquals(hash, hash(800, 21.0, 12.0, "94043"));
+        assertTrue(hash != hash(801, 21.0, 12.0, "94043"));
+        assertTrue(hash != hash(800, 21.5, 12.0, "94043"));
+        assertTrue(hash != hash(800, 21.0, 12.0, "94044"));
+        assertTrue(hash != hash(800, 12.0, 21.0, "94043"));
+        assertTrue(new RefreshGate.Hasher().add("ab").add("c").get()
+                != new RefreshGate.Hasher().add("a").add("bc").get());
+    }
+
+    public void testSkipsOnlyWhatWasPushed() {
+        long hash = hash(800, 21.0, 12.0, "94043");
+        assertFalse("Error: Nothing has been pushed yet",
+                RefreshGate.shouldSkip(mContext, CONSUMER, hash));
+        RefreshGate.onRefreshed(mContext, CONSUMER, hash);
+
+        assertTrue(RefreshGate.shouldSkip(mContext, CONSUMER, hash));
+        assertTrue(RefreshGate.shouldSkip(mContext, CONSUMER, hash));
+        long changed = hash(500, 21.0, 12.0, "94043");
+        assertFalse(RefreshGate.shouldSkip(mContext, CONSUMER, changed));
+        RefreshGate.onRefreshed(mContext, CONSUMER, changed);
+        assertFalse(RefreshGate.shouldSkip(mContext, CONSUMER, hash));
+
+        assertEquals(2, RefreshGate.getSkippedCount(mContext, CONSUMER));
+        assertEquals(2, RefreshGate.getPerformedCount(mContext, CONSUMER));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the settings snapshot follows preference changes, and compares its per-call cost
+    with reading the preferences directly, the way Utility used to.
+ */
+public class TestSunshineSettings extends AndroidTestCase {
+    private static final String LOG_TAG = TestSunshineSettings.class.getSimpleName();
+
+    private static final int WARM_UP_CALLS = 1000;
+    private static final int MEASURED_CALLS = 20000;
+
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSavedUnits = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getString(mContext.getString(R.string.pref_units_key), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key), mSavedUnits).commit();
+        SunshineSettings.refresh(mContext);
+        super.tearDown();
+    }
+
+    private void setUnits(int unitsId) {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key), mContext.getString(unitsId))
+                .commit();
+    }
+
+    public void testRefresh() {
+        setUnits(R.string.pref_units_imperial);
+        assertFalse(SunshineSettings.refresh(mContext).isMetric());
+        assertFalse(Utility.isMetric(mContext));
+        setUnits(R.string.pref_units_metric);
+        assertTrue(SunshineSettings.refresh(mContext).isMetric());
+        assertTrue(Utility.isMetric(mContext));
+    }
+
+    public void testFollowsPreferenceChanges() {
+        SunshineSettings.get(mContext);
+        final boolean metric = !SunshineSettings.get(mContext).isMetric();
+        setUnits(metric ? R.string.pref_units_metric : R.string.pref_units_imperial);
+
+        // The listener runs on the main thread.
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return SunshineSettings.get(mContext).isMetric() == metric;
+            }
+        }.run();
+    }
+
+    public void testSnapshotIsImmutable() {
+        SunshineSettings before = SunshineSettings.refresh(mContext);
+        boolean metric = before.isMetric();
+        setUnits(metric ? R.string.pref_units_imperial : R.string.pref_units_metric);
+        SunshineSettings.refresh(mContext);
+        assertEquals("Error: A snapshot changed after it was taken", metric, before.isMetric());
+    }
+
+    // What Utility.isMetric did before the snapshot.
+    private static boolean isMetricFromPreferences(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    // Benchmark: per-call cost of reading a setting directly versus from the snapshot.
+    public void testPerCallCost() {
+        boolean expected = isMetricFromPreferences(mContext);
+        assertEquals(expected, Utility.isMetric(mContext));
+
+        int hits = 0;
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            if (isMetricFromPreferences(mContext)) hits++;
+            if (Utility.isMetric(mContext)) hits++;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            if (isMetricFromPreferences(mContext)) hits++;
+        }
+        long preferencesNanos = (System.nanoTime() - start) / MEASURED_CALLS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            if (Utility.isMetric(mContext)) hits++;
+        }
+        long snapshotNanos = (System.nanoTime() - start) / MEASURED_CALLS;
+
+        Log.i(LOG_TAG, "isMetric: " + preferencesNanos + "ns per call from SharedPreferences, " +
+                snapshotNanos + "ns from the snapshot (" + hits + " hits)");
+        assertTrue("Error: The snapshot (" + snapshotNanos + "ns) is not faster than " +
+                "SharedPreferences (" + preferencesNanos + "ns)", snapshotNanos < preferencesNanos);
+    }
+}
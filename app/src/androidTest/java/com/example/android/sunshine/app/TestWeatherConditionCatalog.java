@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+
+/*
+    Checks the condition lookups in Utility against the range checks they replaced, for every id
+    around the documented ones.
+ */
+public class TestWeatherConditionCatalog extends AndroidTestCase {
+
+    // What Utility.getIconResourceForWeatherCondition did before the catalog.
+    private static int getIconResourceUncached(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    public void testIconsMatchRangeChecks() {
+        for (int weatherId = 0; weatherId < 1100; weatherId++) {
+            assertEquals("Error: Wrong icon for condition " + weatherId,
+                    getIconResourceUncached(weatherId),
+                    Utility.getIconResourceForWeatherCondition(weatherId));
+        }
+    }
+
+    public void testArtAndUrls() {
+        assertEquals(R.drawable.art_storm, Utility.getArtResourceForWeatherCondition(781));
+        assertEquals(R.drawable.art_fog, Utility.getArtResourceForWeatherCondition(761));
+        assertEquals(R.drawable.art_clouds, Utility.getArtResourceForWeatherCondition(804));
+        assertEquals(-1, Utility.getArtResourceForWeatherCondition(900));
+
+        String artPack = SunshineSettings.get(mContext).getArtPack();
+        assertEquals(String.format(Locale.US, artPack, "light_rain"),
+                Utility.getArtUrlForWeatherCondition(mContext, 310));
+        assertNull(Utility.getArtUrlForWeatherCondition(mContext, 100));
+    }
+
+    public void testStrings() {
+        assertEquals(mContext.getString(R.string.condition_2xx),
+                Utility.getStringForWeatherCondition(mContext, 211));
+        assertEquals(mContext.getString(R.string.condition_531),
+                Utility.getStringForWeatherCondition(mContext, 531));
+        assertEquals(mContext.getString(R.string.condition_962),
+                Utility.getStringForWeatherCondition(mContext, 962));
+        assertEquals(mContext.getString(R.string.condition_unknown, 530),
+                Utility.getStringForWeatherCondition(mContext, 530));
+        assertEquals(mContext.getString(R.string.condition_unknown, 1000),
+                Utility.getStringForWeatherCondition(mContext, 1000));
+    }
+}
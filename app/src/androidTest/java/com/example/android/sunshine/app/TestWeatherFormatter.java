@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/*
+    Checks that the cached formatter renders exactly what Utility rendered before it, follows a
+    locale change, and compares the per-call cost of the two.
+ */
+public class TestWeatherFormatter extends AndroidTestCase {
+    private static final String LOG_TAG = TestWeatherFormatter.class.getSimpleName();
+
+    private static final long DAY = 1000*60*60*24;
+    private static final int DAYS = 14;
+    private static final int WARM_UP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 500;
+
+    private Locale mSavedLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSavedLocale = Locale.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mSavedLocale);
+        WeatherFormatter.invalidate();
+        super.tearDown();
+    }
+
+    // What Utility.getDayName did before the formatter.
+    private static String getDayNameUncached(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return context.getString(R.string.tomorrow);
+        }
+        return new SimpleDateFormat("EEEE").format(dateInMillis);
+    }
+
+    // What Utility.getFriendlyDayString did before the formatter.
+    private static String getFriendlyDayStringUncached(Context context, long dateInMillis,
+                                                       boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return String.format(context.getString(R.string.format_full_friendly_date,
+                    context.getString(R.string.today),
+                    new SimpleDateFormat("MMMM dd").format(dateInMillis)));
+        } else if (julianDay < currentJulianDay + 7) {
+            return getDayNameUncached(context, dateInMillis);
+        }
+        return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+    }
+
+    public void testMatchesUncachedFormatting() {
+        long now = System.currentTimeMillis();
+        for (int i = -1; i < DAYS; i++) {
+            long date = now + i * DAY;
+            assertEquals(getFriendlyDayStringUncached(mContext, date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals(getFriendlyDayStringUncached(mContext, date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals(getDayNameUncached(mContext, date), Utility.getDayName(mContext, date));
+            assertEquals(String.format(mContext.getString(R.string.format_full_friendly_date),
+                    getDayNameUncached(mContext, date), new SimpleDateFormat("MMMM dd").format(date)),
+                    Utility.getFullFriendlyDayString(mContext, date));
+        }
+        // Far outside the memoized days.
+        long later = now + 365 * DAY;
+        assertEquals(getFriendlyDayStringUncached(mContext, later, true),
+                Utility.getFriendlyDayString(mContext, later, true));
+    }
+
+    public void testTemperatureAndWind() {
+        WeatherFormatter formatter = WeatherFormatter.get(mContext);
+        assertEquals(String.format(mContext.getString(R.string.format_temperature), 21.6),
+                formatter.formatTemperature(21.6, true));
+        assertEquals(String.format(mContext.getString(R.string.format_temperature), 21.6 * 1.8 + 32),
+                formatter.formatTemperature(21.6, false));
+        assertEquals(String.format(mContext.getString(R.string.format_wind_kmh), 12.5f, "NW"),
+                formatter.formatWind(12.5f, "NW", true));
+        assertEquals(String.format(mContext.getString(R.string.format_wind_mph),
+                .621371192237334f * 12.5f, "NW"), formatter.formatWind(12.5f, "NW", false));
+    }
+
+    public void testFollowsLocaleChange() {
+        WeatherFormatter before = WeatherFormatter.get(mContext);
+        assertSame("Error: The formatter was rebuilt without a change", before,
+                WeatherFormatter.get(mContext));
+
+        Locale.setDefault(Locale.FRANCE);
+        WeatherFormatter after = WeatherFormatter.get(mContext);
+        assertNotSame("Error: The formatter did not follow the locale", before, after);
+        long inThreeDays = System.currentTimeMillis() + 3 * DAY;
+        assertEquals(new SimpleDateFormat("EEEE", Locale.FRANCE).format(inThreeDays),
+                after.getDayName(inThreeDays));
+    }
+
+    // Benchmark: per-call cost of rendering a week of list labels, uncached versus cached.
+    public void testPerCallCost() {
+        long now = System.currentTimeMillis();
+        int length = 0;
+        for (int r = 0; r < WARM_UP_ROUNDS; r++) {
+            for (int i = 0; i < DAYS; i++) {
+                length += getFriendlyDayStringUncached(mContext, now + i * DAY, i == 0).length();
+                length += Utility.getFriendlyDayString(mContext, now + i * DAY, i == 0).length();
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int r = 0; r < MEASURED_ROUNDS; r++) {
+            for (int i = 0; i < DAYS; i++) {
+                length += getFriendlyDayStringUncached(mContext, now + i * DAY, i == 0).length();
+            }
+        }
+        long uncachedNanos = (System.nanoTime() - start) / (MEASURED_ROUNDS * DAYS);
+
+        start = System.nanoTime();
+        for (int r = 0; r < MEASURED_ROUNDS; r++) {
+            for (int i = 0; i < DAYS; i++) {
+                length += Utility.getFriendlyDayString(mContext, now + i * DAY, i == 0).length();
+            }
+        }
+        long cachedNanos = (System.nanoTime() - start) / (MEASURED_ROUNDS * DAYS);
+
+        Log.i(LOG_TAG, "getFriendlyDayString: " + uncachedNanos + "ns per call uncached, " +
+                cachedNanos + "ns cached (" + length + " chars)");
+        assertTrue("Error: The cached formatter (" + cachedNanos + "ns) is not faster than " +
+                "formatting every call (" + uncachedNanos + "ns)", cachedNanos < uncachedNanos);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that the mapped current conditions file agrees with what the provider returns.
+ */
+public class TestCurrentConditionsFile extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        CurrentConditionsFile.delete(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        CurrentConditionsFile.delete(mContext);
+        super.tearDown();
+    }
+
+    private void insertForecastFromToday(ContentValues locationValues) {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, locationValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] weatherValues = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long millisecondsInADay = 1000*60*60*24;
+        for (int i = 0; i < weatherValues.length; i++) {
+            weatherValues[i].put(WeatherEntry.COLUMN_DATE, today + i * millisecondsInADay);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+    }
+
+    public void testFileMatchesDatabase() {
+        insertForecastFromToday(TestUtilities.createNorthPoleLocationValues());
+
+        assertTrue("Error: No record written for the test location",
+                CurrentConditionsFile.update(mContext, TestUtilities.TEST_LOCATION));
+        CurrentConditionsFile conditions = CurrentConditionsFile.open(mContext);
+        assertNotNull("Error: Unable to map the current conditions file", conditions);
+        int record = conditions.findLocation(TestUtilities.TEST_LOCATION);
+        assertTrue("Error: Test location not found in the file", record >= 0);
+        assertEquals("Error: Today not found in the file",
+                0, conditions.findDay(record, System.currentTimeMillis()));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, System.currentTimeMillis()),
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        int days = conditions.getDayCount(record);
+        assertEquals("Error: Wrong number of days in the file",
+                Math.min(cursor.getCount(), CurrentConditionsFile.DAYS), days);
+        for (int day = 0; day < days; day++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)),
+                    conditions.getDate(record, day));
+            assertEquals(cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID)),
+                    conditions.getWeatherId(record, day));
+            assertEquals(cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)),
+                    conditions.getMaxTemp(record, day), 0.001);
+            assertEquals(cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP)),
+                    conditions.getMinTemp(record, day), 0.001);
+            assertEquals(cursor.getString(cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC)),
+                    conditions.getShortDesc(record, day));
+        }
+        cursor.close();
+    }
+
+    public void testUpdateKeepsOtherLocationsAndBumpsSequence() {
+        insertForecastFromToday(TestUtilities.createNorthPoleLocationValues());
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        insertForecastFromToday(otherLocation);
+
+        assertTrue(CurrentConditionsFile.update(mContext, TestUtilities.TEST_LOCATION));
+        long firstSequence = CurrentConditionsFile.open(mContext).getSequence();
+        assertTrue(CurrentConditionsFile.update(mContext, "94043"));
+
+        CurrentConditionsFile conditions = CurrentConditionsFile.open(mContext);
+        assertEquals(firstSequence + 1, conditions.getSequence());
+        assertEquals(2, conditions.getLocationCount());
+        assertTrue(conditions.findLocation(TestUtilities.TEST_LOCATION) >= 0);
+        assertTrue(conditions.findLocation("94043") >= 0);
+        assertEquals(-1, conditions.findLocation("00000"));
+    }
+
+    public void testLongLocationReplacesItsOwnRecord() {
+        String longLocation = "Llanfairpwllgwyngyllgogerychwyrndrobwllllantysiliogogogoch, Wales";
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, longLocation);
+        insertForecastFromToday(locationValues);
+
+        assertTrue(CurrentConditionsFile.update(mContext, longLocation));
+        assertTrue(CurrentConditionsFile.update(mContext, longLocation));
+
+        CurrentConditionsFile conditions = CurrentConditionsFile.open(mContext);
+        assertEquals("Error: A truncated location should still replace its old record",
+                1, conditions.getLocationCount());
+        assertEquals(0, conditions.findLocation(longLocation));
+    }
+
+    public void testOpenForLocationRebuildsMissingFile() {
+        insertForecastFromToday(TestUtilities.createNorthPoleLocationValues());
+        assertNull(CurrentConditionsFile.open(mContext));
+
+        CurrentConditionsFile conditions =
+                CurrentConditionsFile.openForLocation(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: File wasn't rebuilt from the database", conditions);
+        assertTrue(conditions.findLocation(TestUtilities.TEST_LOCATION) >= 0);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+    Checks LocationIndex against a brute force scan, and times it at 100k locations.
+ */
+public class TestLocationIndex extends AndroidTestCase {
+    private static final String LOG_TAG = TestLocationIndex.class.getSimpleName();
+
+    private static final int BENCHMARK_LOCATIONS = 100000;
+    private static final int BENCHMARK_QUERIES = 2000;
+    private static final int K = 5;
+
+    private long[] mIds;
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+
+    private void createLocations(int count, long seed) {
+        Random random = new Random(seed);
+        mIds = new long[count];
+        mLatitudes = new double[count];
+        mLongitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            mIds[i] = i + 1;
+            // A quarter of the points share coordinates, like cities cached twice.
+            if (i % 4 == 0) {
+                mLatitudes[i] = 51.5;
+                mLongitudes[i] = -0.12;
+            } else {
+                mLatitudes[i] = random.nextDouble() * 180 - 90;
+                mLongitudes[i] = random.nextDouble() * 360 - 180;
+            }
+        }
+    }
+
+    private static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a)) * LocationIndex.EARTH_RADIUS_KM;
+    }
+
+    public void testMatchesBruteForce() {
+        createLocations(5000, 1);
+        LocationIndex index = new LocationIndex(mIds, mLatitudes, mLongitudes, mIds.length);
+        assertEquals(mIds.length, index.size());
+
+        Random random = new Random(2);
+        long[] ids = new long[K];
+        double[] distances = new double[K];
+        double[] expected = new double[mIds.length];
+        for (int q = 0; q < 100; q++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            assertEquals(K, index.nearest(lat, lon, K, ids, distances));
+
+            for (int i = 0; i < mIds.length; i++) {
+                expected[i] = haversineKm(lat, lon, mLatitudes[i], mLongitudes[i]);
+            }
+            Arrays.sort(expected);
+            for (int i = 0; i < K; i++) {
+                assertEquals("Error: Neighbour " + i + " of query " + q + " is wrong",
+                        expected[i], distances[i], 0.01);
+                assertEquals(distances[i], haversineKm(lat, lon,
+                        mLatitudes[(int) ids[i] - 1], mLongitudes[(int) ids[i] - 1]), 0.01);
+            }
+        }
+    }
+
+    public void testAcrossAntimeridian() {
+        mIds = new long[] { 1, 2 };
+        mLatitudes = new double[] { 0, 0 };
+        mLongitudes = new double[] { 179.9, 170 };
+        LocationIndex index = new LocationIndex(mIds, mLatitudes, mLongitudes, 2);
+        long[] ids = new long[1];
+        double[] distances = new double[1];
+        assertEquals(1, index.nearest(0, -179.9, 1, ids, distances));
+        assertEquals("Error: The antimeridian split the neighbourhood", 1, ids[0]);
+    }
+
+    public void testEmptyIndex() {
+        LocationIndex index = new LocationIndex(new long[0], new double[0], new double[0], 0);
+        assertEquals(0, index.nearest(10, 10, K, new long[K], new double[K]));
+    }
+
+    // Benchmark: lookups at 100k locations must stay well under a millisecond.
+    public void testLookupLatency() {
+        createLocations(BENCHMARK_LOCATIONS, 3);
+        long start = System.nanoTime();
+        LocationIndex index = new LocationIndex(mIds, mLatitudes, mLongitudes, mIds.length);
+        long buildNanos = System.nanoTime() - start;
+
+        Random random = new Random(4);
+        long[] ids = new long[K];
+        double[] distances = new double[K];
+        // Warm up
+        for (int q = 0; q < BENCHMARK_QUERIES / 4; q++) {
+            index.nearest(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+                    K, ids, distances);
+        }
+        long worstNanos = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < BENCHMARK_QUERIES; q++) {
+            long queryStart = System.nanoTime();
+            index.nearest(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+                    K, ids, distances);
+            worstNanos = Math.max(worstNanos, System.nanoTime() - queryStart);
+        }
+        long averageNanos = (System.nanoTime() - start) / BENCHMARK_QUERIES;
+
+        Log.i(LOG_TAG, "LocationIndex: " + BENCHMARK_LOCATIONS + " locations built in " +
+                buildNanos / 1000000 + "ms; k=" + K + " lookup average " + averageNanos / 1000 +
+                "us, worst " + worstNanos / 1000 + "us");
+        assertTrue("Error: Average lookup took " + averageNanos + "ns", averageNanos < 1000000);
+    }
+}
@@ -512,4 +512,88 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        This test checks that a location's forecast can be walked a page at a time with the
+        limit/after query parameters, and that the pages neither overlap nor skip rows.
+     */
+    public void testPagedWeatherQuery() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        final int pageSize = 4;
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationPage(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, pageSize),
+                null, null, null, null);
+
+        int seen = 0;
+        while (cursor.getCount() > 0) {
+            assertTrue("Error: Page larger than the requested limit", cursor.getCount() <= pageSize);
+            long lastDate = 0;
+            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext(), seen++) {
+                TestUtilities.validateCurrentRecord("testPagedWeatherQuery.  Error validating row " + seen,
+                        cursor, bulkInsertContentValues[seen]);
+                lastDate = cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE));
+            }
+            cursor.close();
+            cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationPageAfter(
+                            TestUtilities.TEST_LOCATION, lastDate, pageSize),
+                    null, null, null, null);
+        }
+        cursor.close();
+
+        assertEquals("Error: Paging did not visit every row exactly once",
+                BULK_INSERT_RECORDS_TO_INSERT, seen);
+    }
+
+    // Checks that location/near returns the closest cached locations, nearest first, and that
+    // the index notices new locations.
+    public void testLocationNearQuery() {
+        ContentValues northPole = TestUtilities.createNorthPoleLocationValues();
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, northPole);
+
+        ContentValues mountainView = TestUtilities.createNorthPoleLocationValues();
+        mountainView.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        mountainView.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        mountainView.put(LocationEntry.COLUMN_COORD_LAT, 37.386);
+        mountainView.put(LocationEntry.COLUMN_COORD_LONG, -122.0838);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, mountainView);
+
+        // Somewhere near San Francisco
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationNearUri(37.77, -122.42, 2), null, null, null, null);
+        assertEquals("Error: Wrong number of nearby locations", 2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("testLocationNearQuery.  Error validating nearest.",
+                cursor, mountainView);
+        double nearest = cursor.getDouble(cursor.getColumnIndex(LocationEntry.COLUMN_DISTANCE));
+        assertTrue("Error: Unexpected distance " + nearest, nearest > 40 && nearest < 60);
+        assertTrue(cursor.moveToNext());
+        TestUtilities.validateCurrentRecord("testLocationNearQuery.  Error validating second.",
+                cursor, northPole);
+        assertTrue(cursor.getDouble(cursor.getColumnIndex(LocationEntry.COLUMN_DISTANCE)) > nearest);
+        cursor.close();
+
+        ContentValues sanFrancisco = TestUtilities.createNorthPoleLocationValues();
+        sanFrancisco.put(LocationEntry.COLUMN_LOCATION_SETTING, "94103");
+        sanFrancisco.put(LocationEntry.COLUMN_CITY_NAME, "San Francisco");
+        sanFrancisco.put(LocationEntry.COLUMN_COORD_LAT, 37.7725);
+        sanFrancisco.put(LocationEntry.COLUMN_COORD_LONG, -122.4147);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, sanFrancisco);
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationNearUri(37.77, -122.42, 1),
+                new String[] { LocationEntry.COLUMN_LOCATION_SETTING, LocationEntry.COLUMN_DISTANCE },
+                null, null, null);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Index was not rebuilt after an insert", "94103", cursor.getString(0));
+        cursor.close();
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+    Round-trips the database through the binary snapshot exposed by WeatherProvider.openFile.
+ */
+public class TestSnapshot extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testExportImportRoundTrip() throws IOException {
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, locationValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] weatherValues = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        // Export
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        InputStream in = mContext.getContentResolver().openInputStream(WeatherContract.SNAPSHOT_URI);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            snapshot.write(buffer, 0, read);
+        }
+        in.close();
+        assertTrue("Error: Empty snapshot exported", snapshot.size() > 0);
+
+        // Wipe, then import and wait for the provider to tell us it's done.
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        TestUtilities.TestContentObserver tco = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, tco);
+        OutputStream out = mContext.getContentResolver().openOutputStream(WeatherContract.SNAPSHOT_URI);
+        out.write(snapshot.toByteArray());
+        out.close();
+        tco.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(tco);
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        TestUtilities.validateCursor("testExportImportRoundTrip.  Error validating location.",
+                cursor, locationValues);
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Wrong number of forecasts imported",
+                weatherValues.length, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < weatherValues.length; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testExportImportRoundTrip.  Error validating forecast " + i,
+                    cursor, weatherValues[i]);
+        }
+        cursor.close();
+    }
+
+    public void testImportRejectsGarbage() throws IOException {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        try {
+            WeatherSnapshot.read(dbHelper.getWritableDatabase(),
+                    new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6}));
+            fail("Error: Garbage was accepted as a snapshot");
+        } catch (IOException expected) {
+        } finally {
+            dbHelper.close();
+        }
+    }
+}
@@ -53,5 +53,10 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The SNAPSHOT URI was matched incorrectly.",
+                testMatcher.match(WeatherContract.SNAPSHOT_URI), WeatherProvider.SNAPSHOT);
+        assertEquals("Error: The LOCATION NEAR URI was matched incorrectly.",
+                testMatcher.match(WeatherContract.LocationEntry.buildLocationNearUri(64.7, -147.3, 3)),
+                WeatherProvider.LOCATION_NEAR);
     }
 }
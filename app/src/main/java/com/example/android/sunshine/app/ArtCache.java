@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.model.stream.StreamModelLoader;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Decoded art from the selected art pack, shared by the forecast list, the detail pane, the
+ * detail widget and the notification.
+ *
+ * An art pack has only a handful of images and each is shown at one of a few sizes, so after
+ * every sync {@link #prefetch} downloads and decodes the ones the forecast needs at every size.
+ * They are kept in a size-bounded in-memory LRU per size, in front of Glide's disk cache, which
+ * keeps both the downloaded and the resized images so a new process doesn't go back to the
+ * network.  The memory tier is trimmed when the system is short of memory.
+ */
+public class ArtCache {
+    private static final String LOG_TAG = ArtCache.class.getSimpleName();
+
+    // List rows and detail widget rows
+    public static final int SIZE_ICON = 0;
+    // The today row and the detail pane
+    public static final int SIZE_ART = 1;
+    public static final int SIZE_NOTIFICATION = 2;
+    private static final int SIZE_COUNT = 3;
+
+    private static ArtCache sInstance;
+
+    private final Context mContext;
+    private final int[] mWidths = new int[SIZE_COUNT];
+    private final int[] mHeights = new int[SIZE_COUNT];
+    private final Tier[] mTiers = new Tier[SIZE_COUNT];
+
+    private static class Tier extends LruCache<String, Bitmap> {
+        Tier(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        protected int sizeOf(String url, Bitmap bitmap) {
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    }
+
+    // Finds an image in Glide's disk cache without ever going to the network.  Glide looks in
+    // the disk cache before asking the fetcher, and keys entries by the fetcher's id, which for
+    // the network loader is the URL too.
+    private static final StreamModelLoader<String> CACHE_ONLY_LOADER =
+            new StreamModelLoader<String>() {
+        @Override
+        public DataFetcher<InputStream> getResourceFetcher(final String url, int width, int height) {
+            return new DataFetcher<InputStream>() {
+                @Override
+                public InputStream loadData(Priority priority) throws Exception {
+                    throw new IOException("Not cached: " + url);
+                }
+
+                @Override
+                public void cleanup() {
+                }
+
+                @Override
+                public String getId() {
+                    return url;
+                }
+
+                @Override
+                public void cancel() {
+                }
+            };
+        }
+    };
+
+    private ArtCache(Context context) {
+        // An eighth of what the app may use, which holds every image of a pack at every size
+        this(context, (int) (Runtime.getRuntime().maxMemory() / 8 / SIZE_COUNT));
+    }
+
+    ArtCache(Context context, int maxBytesPerSize) {
+        mContext = context.getApplicationContext();
+        Resources resources = mContext.getResources();
+
+        mWidths[SIZE_ICON] = mHeights[SIZE_ICON] =
+                resources.getDimensionPixelSize(R.dimen.list_icon);
+        mWidths[SIZE_ART] = mHeights[SIZE_ART] =
+                resources.getDimensionPixelSize(R.dimen.today_icon);
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            setNotificationSize(resources);
+        } else {
+            mWidths[SIZE_NOTIFICATION] = mHeights[SIZE_NOTIFICATION] =
+                    resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        }
+
+        for (int size = 0; size < SIZE_COUNT; size++) {
+            mTiers[size] = new Tier(maxBytesPerSize);
+        }
+    }
+
+    public static synchronized ArtCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new ArtCache(context);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+                sInstance.registerTrimCallbacks();
+            }
+        }
+        return sInstance;
+    }
+
+    @SuppressLint("InlinedApi")
+    private void setNotificationSize(Resources resources) {
+        mWidths[SIZE_NOTIFICATION] =
+                resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        mHeights[SIZE_NOTIFICATION] =
+                resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void registerTrimCallbacks() {
+        mContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    /*
+        Drops everything once the app is in the background and the system is getting short of
+        memory, and half of it while the app is still running but the system is.  The levels in
+        between, TRIM_MEMORY_UI_HIDDEN and TRIM_MEMORY_BACKGROUND, only say the app left the
+        screen or joined the LRU list; the art is kept for when the user comes back.
+     */
+    @SuppressLint("InlinedApi")
+    void trimMemory(int level) {
+        for (Tier tier : mTiers) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+                tier.evictAll();
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                    && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                tier.trimToSize(tier.maxSize() / 2);
+            }
+        }
+    }
+
+    /**
+     * Returns the decoded image if it is in memory.  Never blocks, so it is safe on the main
+     * thread.
+     *
+     * @param size one of the SIZE_ constants
+     */
+    public Bitmap peek(String url, int size) {
+        return mTiers[size].get(url);
+    }
+
+    /**
+     * Returns the image from memory or from the disk cache, or null if it hasn't been
+     * downloaded.  Never goes to the network, but may block on the disk, so call it off the main
+     * thread.
+     */
+    public Bitmap getCached(String url, int size) {
+        return get(url, size, true);
+    }
+
+    /**
+     * Like {@link #getCached}, but downloads the image if need be.
+     */
+    public Bitmap get(String url, int size) {
+        return get(url, size, false);
+    }
+
+    private Bitmap get(String url, int size, boolean cacheOnly) {
+        Bitmap bitmap = mTiers[size].get(url);
+        if (null != bitmap) {
+            return bitmap;
+        }
+        // Glide's own memory cache is skipped, since this cache already holds the image, and the
+        // request is cleared as soon as it is done so Glide can reuse its bitmap.  That bitmap
+        // then goes back to Glide's pool, so this cache keeps a copy of it.
+        FutureTarget<Bitmap> future;
+        if (cacheOnly) {
+            future = Glide.with(mContext)
+                    .using(CACHE_ONLY_LOADER)
+                    .load(url)
+                    .asBitmap()
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .skipMemoryCache(true)
+                    .fitCenter()
+                    .into(mWidths[size], mHeights[size]);
+        } else {
+            future = Glide.with(mContext)
+                    .load(url)
+                    .asBitmap()
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .skipMemoryCache(true)
+                    .fitCenter()
+                    .into(mWidths[size], mHeights[size]);
+        }
+        try {
+            Bitmap decoded = future.get();
+            // getConfig() is null for formats Bitmap.Config doesn't name
+            Bitmap.Config config = decoded.getConfig();
+            bitmap = decoded.copy(null != config ? config : Bitmap.Config.ARGB_8888, false);
+        } catch (InterruptedException | ExecutionException e) {
+            if (!cacheOnly) {
+                Log.e(LOG_TAG, "Error retrieving art from " + url, e);
+            }
+            return null;
+        } finally {
+            Glide.clear(future);
+        }
+        if (null != bitmap) {
+            put(url, size, bitmap);
+        }
+        return bitmap;
+    }
+
+    void put(String url, int size, Bitmap bitmap) {
+        mTiers[size].put(url, bitmap);
+    }
+
+    /**
+     * Downloads and decodes the art for every condition in the forecast at every size, so that
+     * the list, detail pane, widgets and notification find it in memory.  Does nothing when the
+     * app's own graphics are selected.  Blocks, so call it off the main thread.
+     */
+    public void prefetch(Forecast forecast) {
+        if (Utility.usingLocalGraphics(mContext)) {
+            return;
+        }
+        boolean[] seen = new boolean[WeatherConditionCatalog.KIND_COUNT];
+        for (int i = 0; i < forecast.getCount(); i++) {
+            int weatherId = forecast.getWeatherId(i);
+            int kind = WeatherConditionCatalog.getKind(weatherId);
+            if (kind == WeatherConditionCatalog.KIND_UNKNOWN || seen[kind]) {
+                continue;
+            }
+            seen[kind] = true;
+            String url = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            for (int size = 0; size < SIZE_COUNT; size++) {
+                get(url, size, false);
+            }
+        }
+    }
+}
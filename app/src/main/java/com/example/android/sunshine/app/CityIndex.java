@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A sorted table of known city names ("London,GB") for offline autocomplete and validation of
+ * the location preference.
+ *
+ * The table is generated at build time from src/main/cities/cities.txt by the
+ * generateCityIndex task in app/build.gradle and shipped as an uncompressed asset, so it can be
+ * memory mapped straight out of the APK: nothing but the header is read until a lookup touches
+ * it, and lookups are a binary search over the mapped bytes.
+ *
+ * Layout, all values big-endian:
+ * <pre>
+ *   int   MAGIC
+ *   short VERSION
+ *   short reserved
+ *   int   count
+ *   int   offsets[count + 1]   start of each name in the blob; the last is the blob length
+ *   byte  blob[]               the UTF-8 names, back to back
+ * </pre>
+ * Names are sorted by their UTF-8 bytes compared unsigned, with ASCII letters folded to lower
+ * case, which is also how lookups compare.  The build script must sort the same way.
+ */
+public class CityIndex {
+    private static final String LOG_TAG = CityIndex.class.getSimpleName();
+
+    static final String ASSET_NAME = "cities.idx";
+
+    static final int MAGIC = 0x43495459; // "CITY"
+    static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 4;
+
+    private static final byte SEPARATOR = ',';
+
+    private static CityIndex sInstance;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mBlobStart;
+
+    CityIndex(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a city index");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported city index version " + buffer.getShort(4));
+        }
+        mBuffer = buffer;
+        mCount = buffer.getInt(8);
+        mBlobStart = HEADER_SIZE + 4 * (mCount + 1);
+        if (mCount < 0 || mBlobStart > buffer.capacity()
+                || mBlobStart + offset(mCount) > buffer.capacity()) {
+            throw new IOException("Truncated city index");
+        }
+    }
+
+    /**
+     * Returns the bundled index, mapping it on first use, or null if the APK has none.  The
+     * first call touches the disk.
+     */
+    public static synchronized CityIndex getInstance(Context context) {
+        if (null == sInstance) {
+            try {
+                sInstance = new CityIndex(mapAsset(context));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Unable to load the city index", e);
+            }
+        }
+        return sInstance;
+    }
+
+    private static ByteBuffer mapAsset(Context context) throws IOException {
+        AssetFileDescriptor afd = null;
+        try {
+            // Only works if the asset is stored uncompressed (see aaptOptions in build.gradle).
+            afd = context.getAssets().openFd(ASSET_NAME);
+            FileInputStream in = afd.createInputStream();
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getLength());
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "City index is compressed, reading it into memory instead");
+            InputStream in = context.getAssets().open(ASSET_NAME);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return ByteBuffer.wrap(out.toByteArray());
+            } finally {
+                in.close();
+            }
+        } finally {
+            if (null != afd) {
+                // The mapping stays valid after the descriptor is closed.
+                afd.close();
+            }
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return the size of the table in bytes, all of it mapped rather than on the heap when the
+     * index came from the APK
+     */
+    public int getByteSize() {
+        return mBuffer.capacity();
+    }
+
+    public String get(int index) {
+        int start = offset(index);
+        int length = offset(index + 1) - start;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(mBlobStart + start + i);
+        }
+        return decode(bytes);
+    }
+
+    /**
+     * Collects the names starting with prefix, ignoring ASCII case, in sorted order.
+     *
+     * @return the number of names written to out, at most out.length
+     */
+    public int findPrefix(CharSequence prefix, String[] out) {
+        byte[] key = fold(encode(normalize(prefix, false)));
+        int found = 0;
+        for (int i = lowerBound(key); i < mCount && found < out.length && hasPrefix(i, key); i++) {
+            out[found++] = get(i);
+        }
+        return found;
+    }
+
+    /**
+     * @return true if name is a known city, either exactly as stored ("London,GB") or without
+     * its country ("London").  Case and spaces around the comma are ignored.
+     */
+    public boolean contains(CharSequence name) {
+        byte[] key = fold(encode(normalize(name, true)));
+        if (key.length == 0) return false;
+        for (int i = lowerBound(key); i < mCount && hasPrefix(i, key); i++) {
+            int length = offset(i + 1) - offset(i);
+            if (length == key.length) return true;
+            if (mBuffer.get(mBlobStart + offset(i) + key.length) == SEPARATOR) return true;
+        }
+        return false;
+    }
+
+    private int offset(int index) {
+        return mBuffer.getInt(HEADER_SIZE + 4 * index);
+    }
+
+    // First index whose name is not less than key.
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mid, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int index, byte[] key) {
+        int start = mBlobStart + offset(index);
+        int length = offset(index + 1) - offset(index);
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int a = fold(mBuffer.get(start + i));
+            int b = key[i] & 0xff;
+            if (a != b) return a - b;
+        }
+        return length - key.length;
+    }
+
+    private boolean hasPrefix(int index, byte[] key) {
+        int start = mBlobStart + offset(index);
+        int length = offset(index + 1) - offset(index);
+        if (length < key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (fold(mBuffer.get(start + i)) != (key[i] & 0xff)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes names in the index format.  The build generates the bundled table itself; this is
+     * for building tables at run time, e.g. in tests.
+     */
+    static void write(List<String> names, OutputStream out) throws IOException {
+        List<byte[]> encoded = new ArrayList<byte[]>(names.size());
+        for (String name : names) {
+            encoded.add(encode(normalize(name, true)));
+        }
+        Collections.sort(encoded, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] a, byte[] b) {
+                return compareFolded(a, b);
+            }
+        });
+        // Drop names that only differ in case.
+        List<byte[]> unique = new ArrayList<byte[]>(encoded.size());
+        for (byte[] name : encoded) {
+            if (unique.isEmpty() || compareFolded(unique.get(unique.size() - 1), name) != 0) {
+                unique.add(name);
+            }
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeShort(0);
+        data.writeInt(unique.size());
+        int offset = 0;
+        for (byte[] name : unique) {
+            data.writeInt(offset);
+            offset += name.length;
+        }
+        data.writeInt(offset);
+        for (byte[] name : unique) {
+            data.write(name);
+        }
+        data.flush();
+    }
+
+    private static int compareFolded(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int diff = fold(a[i]) - fold(b[i]);
+            if (diff != 0) return diff;
+        }
+        return a.length - b.length;
+    }
+
+    private static int fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xff;
+    }
+
+    private static byte[] fold(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) fold(bytes[i]);
+        }
+        return bytes;
+    }
+
+    // "London , gb " -> "London,gb".  A trailing space is kept for prefix lookups, where "San "
+    // shouldn't match "Santiago".
+    private static String normalize(CharSequence name, boolean trimEnd) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == SEPARATOR) {
+                while (sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ') {
+                    sb.setLength(sb.length() - 1);
+                }
+                sb.append(c);
+                while (i + 1 < name.length() && name.charAt(i + 1) == ' ') i++;
+            } else if (c != ' ' || sb.length() > 0) {
+                sb.append(c);
+            }
+        }
+        while (trimEnd && sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ') {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] encode(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String decode(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.CurrentConditionsFile;
+import com.example.android.sunshine.app.wearable.WearableIntentService;
+import com.example.android.sunshine.app.widget.DetailWidgetProvider;
+import com.example.android.sunshine.app.widget.TodayWidgetIntentService;
+
+import java.util.ArrayList;
+
+/**
+ * Tells the widgets and the wearable that the weather data changed.
+ *
+ * Updates that arrive within {@link #DEBOUNCE_MILLIS} of each other, such as a manual refresh
+ * right after a periodic sync, are merged into one.  The merged update records which locations
+ * and which range of dates changed.  It is handed to every consumer in turn on one background
+ * thread, along with the current conditions and the forecast, which are read once for all of
+ * them.  A {@link DataUpdateService} keeps the process alive until that is done.
+ */
+public class DataUpdateDispatcher {
+    private static final String LOG_TAG = DataUpdateDispatcher.class.getSimpleName();
+
+    // How long to wait for more updates after the latest one
+    static final long DEBOUNCE_MILLIS = 2000;
+    // How long a stream of updates may hold back the first of them
+    static final long MAX_DELAY_MILLIS = 10000;
+    // How long awaitIdle gives the consumers, on top of MAX_DELAY_MILLIS
+    private static final long CONSUMER_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Called on the dispatcher's thread, so it may block.
+     */
+    public interface Consumer {
+        void onDataUpdated(Context context, DataUpdate update);
+    }
+
+    /**
+     * What changed, and the data every consumer shows, read once.
+     */
+    public static final class DataUpdate {
+        private final String[] mChangedLocations;
+        private final long mFirstChangedDate;
+        private final long mLastChangedDate;
+
+        /** The preferred location. */
+        public final String mLocation;
+        /** Null if the file doesn't have the preferred location. */
+        public final CurrentConditionsFile mConditions;
+        /** The preferred location's record in {@link #mConditions}. */
+        public final int mRecord;
+        /** Today in {@link #mConditions}, or -1 if the file doesn't reach today. */
+        public final int mToday;
+        /** The shared forecast for the preferred location. */
+        public final Forecast mForecast;
+
+        DataUpdate(String[] changedLocations, long firstChangedDate, long lastChangedDate,
+                   String location, CurrentConditionsFile conditions, int record, int today,
+                   Forecast forecast) {
+            mChangedLocations = changedLocations;
+            mFirstChangedDate = firstChangedDate;
+            mLastChangedDate = lastChangedDate;
+            mLocation = location;
+            mConditions = conditions;
+            mRecord = record;
+            mToday = today;
+            mForecast = forecast;
+        }
+
+        /**
+         * @return true if any of the location's data changed
+         */
+        public boolean changed(String locationSetting) {
+            for (String changed : mChangedLocations) {
+                if (changed.equals(locationSetting)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return true if the location's data for the day starting at the normalized date
+         * changed
+         */
+        public boolean changed(String locationSetting, long date) {
+            return date >= mFirstChangedDate && date <= mLastChangedDate
+                    && changed(locationSetting);
+        }
+
+        /**
+         * @return true if today's values for the preferred location changed
+         */
+        public boolean todayChanged() {
+            return mToday >= 0 && changed(mLocation, mConditions.getDate(mRecord, mToday));
+        }
+    }
+
+    private static DataUpdateDispatcher sInstance;
+
+    private final Context mContext;
+    private final boolean mKeepAlive;
+    private final Consumer[] mConsumers;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    // The update being gathered, guarded by this
+    private final ArrayList<String> mPendingLocations = new ArrayList<String>();
+    private long mPendingFirstDate = Long.MAX_VALUE;
+    private long mPendingLastDate = Long.MIN_VALUE;
+    private long mPendingSince;
+    private boolean mDispatching;
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    DataUpdateDispatcher(Context context, Consumer... consumers) {
+        this(context, false, consumers);
+    }
+
+    /**
+     * @param keepAlive whether to start a {@link DataUpdateService} with each update
+     */
+    private DataUpdateDispatcher(Context context, boolean keepAlive, Consumer... consumers) {
+        mContext = context.getApplicationContext();
+        mKeepAlive = keepAlive;
+        mConsumers = consumers;
+        mThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    public static synchronized DataUpdateDispatcher getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new DataUpdateDispatcher(context, true,
+                    TodayWidgetIntentService.DATA_UPDATE_CONSUMER,
+                    DetailWidgetProvider.DATA_UPDATE_CONSUMER,
+                    WearableIntentService.DATA_UPDATE_CONSUMER);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Reports that the location's weather for the days from firstDate to lastDate (normalized
+     * dates, inclusive) was written.  Returns at once; the consumers hear about it after the
+     * debounce window.
+     */
+    public synchronized void onDataUpdated(String locationSetting, long firstDate,
+                                           long lastDate) {
+        long now = SystemClock.uptimeMillis();
+        if (mPendingLocations.isEmpty()) {
+            mPendingSince = now;
+        }
+        if (!mPendingLocations.contains(locationSetting)) {
+            mPendingLocations.add(locationSetting);
+        }
+        mPendingFirstDate = Math.min(mPendingFirstDate, firstDate);
+        mPendingLastDate = Math.max(mPendingLastDate, lastDate);
+
+        mHandler.removeCallbacks(mDispatch);
+        mHandler.postAtTime(mDispatch,
+                Math.min(now + DEBOUNCE_MILLIS, mPendingSince + MAX_DELAY_MILLIS));
+        if (mKeepAlive) {
+            mContext.startService(new Intent(mContext, DataUpdateService.class));
+        }
+    }
+
+    /**
+     * Blocks until every update reported so far has been handed to the consumers, or until
+     * the consumers have had a minute for it.
+     */
+    public synchronized void awaitIdle() {
+        long deadline = SystemClock.uptimeMillis() + MAX_DELAY_MILLIS + CONSUMER_TIMEOUT_MILLIS;
+        while (!mPendingLocations.isEmpty() || mDispatching) {
+            long remaining = deadline - SystemClock.uptimeMillis();
+            if (remaining <= 0) {
+                Log.w(LOG_TAG, "Gave up waiting for the data update to be dispatched");
+                return;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // For tests, which make their own dispatchers
+    void quit() {
+        mThread.quit();
+    }
+
+    private void dispatch() {
+        String[] locations;
+        long firstDate;
+        long lastDate;
+        synchronized (this) {
+            if (mPendingLocations.isEmpty()) return;
+            locations = mPendingLocations.toArray(new String[mPendingLocations.size()]);
+            firstDate = mPendingFirstDate;
+            lastDate = mPendingLastDate;
+            mPendingLocations.clear();
+            mPendingFirstDate = Long.MAX_VALUE;
+            mPendingLastDate = Long.MIN_VALUE;
+            mDispatching = true;
+        }
+        try {
+            dispatch(locations, firstDate, lastDate);
+        } finally {
+            synchronized (this) {
+                mDispatching = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void dispatch(String[] locations, long firstDate, long lastDate) {
+        String location = Utility.getPreferredLocation(mContext);
+        CurrentConditionsFile conditions = CurrentConditionsFile.openForLocation(mContext, location);
+        int record = null == conditions ? -1 : conditions.findLocation(location);
+        if (record < 0) {
+            conditions = null;
+        }
+        int today = null == conditions ? -1
+                : conditions.findDay(record, System.currentTimeMillis());
+        Forecast forecast = ForecastRepository.getInstance(mContext).getForecast();
+        DataUpdate update = new DataUpdate(locations, firstDate, lastDate, location, conditions,
+                record, today, forecast);
+
+        for (Consumer consumer : mConsumers) {
+            try {
+                consumer.onDataUpdated(mContext, update);
+            } catch (RuntimeException e) {
+                // One consumer failing shouldn't keep the others from updating
+                Log.e(LOG_TAG, "Error dispatching data update to " + consumer, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * Keeps the process alive while the {@link DataUpdateDispatcher} has an update to deliver.
+ *
+ * The dispatcher holds an update back for its debounce window, which usually outlasts the sync
+ * that reported it.  A process with only a background thread left may be killed before that
+ * window ends, so the dispatcher starts this service with every update, and the service doesn't
+ * finish until the dispatcher has handed everything to its consumers.
+ */
+public class DataUpdateService extends IntentService {
+
+    public DataUpdateService() {
+        super("DataUpdateService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        DataUpdateDispatcher.getInstance(this).awaitIdle();
+    }
+}
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
@@ -56,7 +57,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private Uri mUri;
     private boolean mTransitionAnimation;
 
-    private static final int DETAIL_LOADER = 0;
+    static final int DETAIL_LOADER = 0;
 
     private static final String[] DETAIL_COLUMNS = {
             WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
@@ -112,6 +113,10 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             mUri = arguments.getParcelable(DetailFragment.DETAIL_URI);
             mTransitionAnimation = arguments.getBoolean(DetailFragment.DETAIL_TRANSITION_ANIMATION, false);
         }
+        if (savedInstanceState != null && savedInstanceState.containsKey(DETAIL_URI)) {
+            // The day may have been changed by showDay since the arguments were set.
+            mUri = savedInstanceState.getParcelable(DETAIL_URI);
+        }
 
         View rootView = inflater.inflate(R.layout.fragment_detail_start, container, false);
         mIconView = (ImageView) rootView.findViewById(R.id.detail_icon);
@@ -153,10 +158,35 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        ForecastRepository.getInstance(getActivity()).addListener(mForecastListener);
+        loadDetail(false);
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(DETAIL_URI, mUri);
+    }
+
+    @Override
+    public void onDestroyView() {
+        ForecastRepository.getInstance(getActivity()).removeListener(mForecastListener);
+        super.onDestroyView();
+    }
+
+    /**
+     * Shows another day in the views this fragment already has, which on tablets is far cheaper
+     * than replacing the fragment for each day picked in the list: the views aren't inflated
+     * again and a day the repository holds needs no loader or query.
+     */
+    void showDay(Uri uri) {
+        mUri = uri;
+        if (null != getView()) {
+            loadDetail(true);
+        }
+    }
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -164,8 +194,48 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
+            loadDetail(true);
+        }
+    }
+
+    /*
+        The days the forecast list shows are already in memory in the ForecastRepository, so
+        picking one of them (which on tablets rebinds this fragment in place) is a lookup.  Only
+        days the repository doesn't hold, or a repository that hasn't loaded yet, go through the
+        loader.
+     */
+    private void loadDetail(boolean restart) {
+        if (bindForecast(ForecastRepository.getInstance(getActivity()).peekForecast())) {
+            getLoaderManager().destroyLoader(DETAIL_LOADER);
+        } else if (restart) {
             getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+        } else {
+            getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        }
+    }
+
+    private final ForecastRepository.Listener mForecastListener = new ForecastRepository.Listener() {
+        @Override
+        public void onForecastChanged(Forecast forecast) {
+            // Follow the repository whenever it has our day; otherwise the loader keeps going.
+            if (bindForecast(forecast)) {
+                getLoaderManager().destroyLoader(DETAIL_LOADER);
+            }
         }
+    };
+
+    private boolean bindForecast(Forecast forecast) {
+        if (null == forecast || null == mUri || null == getView()) return false;
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri);
+        if (!forecast.getLocationSetting().equals(locationSetting)) return false;
+        int day = forecast.indexOfDate(WeatherContract.WeatherEntry.getDateFromUri(mUri));
+        if (day < 0) return false;
+
+        bindDay(forecast.getWeatherId(day), forecast.getDate(day), forecast.getMaxTemp(day),
+                forecast.getMinTemp(day), forecast.getHumidity(day), forecast.getWindSpeed(day),
+                forecast.getDegrees(day), forecast.getPressure(day));
+        onDetailBound();
+        return true;
     }
 
     @Override
@@ -192,78 +262,86 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
+            bindDay(data.getInt(COL_WEATHER_CONDITION_ID), data.getLong(COL_WEATHER_DATE),
+                    data.getDouble(COL_WEATHER_MAX_TEMP), data.getDouble(COL_WEATHER_MIN_TEMP),
+                    data.getFloat(COL_WEATHER_HUMIDITY), data.getFloat(COL_WEATHER_WIND_SPEED),
+                    data.getFloat(COL_WEATHER_DEGREES), data.getFloat(COL_WEATHER_PRESSURE));
+        }
+        onDetailBound();
+    }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
+    private void bindDay(int weatherId, long date, double high, double low, float humidity,
+                         float windSpeed, float windDirection, float pressure) {
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
+        }
 
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+        if ( Utility.usingLocalGraphics(getActivity()) ) {
+            mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+        } else {
+            // Use weather art image, already decoded if the last sync prefetched it
+            String artUrl = Utility.getArtUrlForWeatherCondition(getActivity(), weatherId);
+            Bitmap art = ArtCache.getInstance(getActivity()).peek(artUrl, ArtCache.SIZE_ART);
+            if (null != art) {
+                Glide.clear(mIconView);
+                mIconView.setImageBitmap(art);
             } else {
-                // Use weather art image
                 Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                        .load(artUrl)
                         .error(Utility.getArtResourceForWeatherCondition(weatherId))
                         .crossFade()
                         .into(mIconView);
             }
+        }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+        // Update views for day of week and date
+        String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
+        mDateView.setText(dateText);
+
+        // Get description from weather condition ID
+        String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
+        mDescriptionView.setText(description);
+        mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
+
+        // Update the high temperature view
+        boolean isMetric = Utility.isMetric(getActivity());
+
+        String highString = Utility.formatTemperature(getActivity(), high);
+        mHighTempView.setText(highString);
+        mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
+
+        // Update the low temperature view
+        String lowString = Utility.formatTemperature(getActivity(), low);
+        mLowTempView.setText(lowString);
+        mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
+
+        // Update the humidity view
+        mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
+        mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
+        mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
+
+        // Update the wind speed and direction view
+        mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeed, windDirection));
+        mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
+        mWindLabelView.setContentDescription(mWindView.getContentDescription());
+
+        // Update the pressure view
+        mPressureView.setText(getString(R.string.format_pressure, pressure));
+        mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
+        mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+    }
 
-        }
+    private void onDetailBound() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
@@ -280,8 +358,11 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         } else {
             if ( null != toolbarView ) {
                 Menu menu = toolbarView.getMenu();
-                if ( null != menu ) menu.clear();
-                toolbarView.inflateMenu(R.menu.detailfragment);
+                // Rebinding to another day only needs a new share intent.
+                if ( null == menu || null == menu.findItem(R.id.action_share) ) {
+                    if ( null != menu ) menu.clear();
+                    toolbarView.inflateMenu(R.menu.detailfragment);
+                }
                 finishCreatingMenu(toolbarView.getMenu());
             }
         }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.sunshine.app.data.CurrentConditionsFile;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, in-memory copy of one location's forecast, as served by
+ * {@link ForecastRepository}.
+ *
+ * Days are kept in parallel primitive arrays ordered by date rather than as a cursor or one
+ * object per day, so a snapshot is a handful of allocations no matter how many days it holds,
+ * and looking a day up is a binary search.
+ */
+public class Forecast {
+
+    // Everything the list, the detail pane and the widgets show.
+    static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // These indices are tied to COLUMNS.
+    static final int COL_ID = 0;
+    static final int COL_DATE = 1;
+    static final int COL_SHORT_DESC = 2;
+    static final int COL_MAX_TEMP = 3;
+    static final int COL_MIN_TEMP = 4;
+    static final int COL_HUMIDITY = 5;
+    static final int COL_PRESSURE = 6;
+    static final int COL_WIND_SPEED = 7;
+    static final int COL_DEGREES = 8;
+    static final int COL_WEATHER_ID = 9;
+    static final int COL_COORD_LAT = 10;
+    static final int COL_COORD_LONG = 11;
+
+    private final String mLocationSetting;
+    private final long mStartDate;
+    private final int mCount;
+    private final double mCoordLat;
+    private final double mCoordLong;
+
+    private final long[] mIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final String[] mShortDescs;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+    private final float[] mHumidities;
+    private final float[] mPressures;
+    private final float[] mWindSpeeds;
+    private final float[] mDegrees;
+
+    /**
+     * Copies cursor, queried with {@link #COLUMNS} and sorted by date, into a snapshot.
+     *
+     * @param startDate the normalized date the query started at
+     */
+    static Forecast fromCursor(String locationSetting, long startDate, Cursor cursor) {
+        return new Forecast(locationSetting, startDate, cursor);
+    }
+
+    /**
+     * Builds a partial forecast from the days the sync last wrote to the current conditions
+     * file, for showing before the database has been read.  It has no ids, humidity, pressure,
+     * wind or coordinates.
+     *
+     * @return null if the file has nothing from startDate on for locationSetting
+     */
+    static Forecast fromConditionsFile(CurrentConditionsFile conditions, String locationSetting,
+                                       long startDate) {
+        int record = null == conditions ? -1 : conditions.findLocation(locationSetting);
+        int first = record < 0 ? -1 : conditions.findDay(record, startDate);
+        if (first < 0) return null;
+
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int day = first; day < conditions.getDayCount(record); day++) {
+            cursor.addRow(new Object[] {
+                    0L, conditions.getDate(record, day), conditions.getShortDesc(record, day),
+                    conditions.getMaxTemp(record, day), conditions.getMinTemp(record, day),
+                    0f, 0f, 0f, 0f, conditions.getWeatherId(record, day), 0d, 0d });
+        }
+        try {
+            return new Forecast(locationSetting, startDate, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Forecast(String locationSetting, long startDate, Cursor cursor) {
+        mLocationSetting = locationSetting;
+        mStartDate = startDate;
+        mCount = null == cursor ? 0 : cursor.getCount();
+
+        mIds = new long[mCount];
+        mDates = new long[mCount];
+        mWeatherIds = new int[mCount];
+        mShortDescs = new String[mCount];
+        mMaxTemps = new double[mCount];
+        mMinTemps = new double[mCount];
+        mHumidities = new float[mCount];
+        mPressures = new float[mCount];
+        mWindSpeeds = new float[mCount];
+        mDegrees = new float[mCount];
+
+        double lat = 0;
+        double lon = 0;
+        for (int i = 0; i < mCount && cursor.moveToPosition(i); i++) {
+            mIds[i] = cursor.getLong(COL_ID);
+            mDates[i] = cursor.getLong(COL_DATE);
+            mWeatherIds[i] = cursor.getInt(COL_WEATHER_ID);
+            mShortDescs[i] = cursor.getString(COL_SHORT_DESC);
+            mMaxTemps[i] = cursor.getDouble(COL_MAX_TEMP);
+            mMinTemps[i] = cursor.getDouble(COL_MIN_TEMP);
+            mHumidities[i] = cursor.getFloat(COL_HUMIDITY);
+            mPressures[i] = cursor.getFloat(COL_PRESSURE);
+            mWindSpeeds[i] = cursor.getFloat(COL_WIND_SPEED);
+            mDegrees[i] = cursor.getFloat(COL_DEGREES);
+            lat = cursor.getDouble(COL_COORD_LAT);
+            lon = cursor.getDouble(COL_COORD_LONG);
+        }
+        mCoordLat = lat;
+        mCoordLong = lon;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * @return the normalized date the snapshot starts at; days before it are not included
+     */
+    public long getStartDate() {
+        return mStartDate;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public double getCoordLat() {
+        return mCoordLat;
+    }
+
+    public double getCoordLong() {
+        return mCoordLong;
+    }
+
+    public long getId(int index) {
+        return mIds[index];
+    }
+
+    public long getDate(int index) {
+        return mDates[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    public String getShortDesc(int index) {
+        return mShortDescs[index];
+    }
+
+    public double getMaxTemp(int index) {
+        return mMaxTemps[index];
+    }
+
+    public double getMinTemp(int index) {
+        return mMinTemps[index];
+    }
+
+    public float getHumidity(int index) {
+        return mHumidities[index];
+    }
+
+    public float getPressure(int index) {
+        return mPressures[index];
+    }
+
+    public float getWindSpeed(int index) {
+        return mWindSpeeds[index];
+    }
+
+    public float getDegrees(int index) {
+        return mDegrees[index];
+    }
+
+    /**
+     * @param date a normalized date, as stored in the database
+     * @return the index of that day, or -1 if it is not part of this snapshot
+     */
+    public int indexOfDate(long date) {
+        int index = Arrays.binarySearch(mDates, date);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return a cursor over the snapshot laid out as {@link ForecastFragment#FORECAST_COLUMNS},
+     * for code that consumes the list's cursor.  It reads the arrays directly and needs no
+     * closing.
+     */
+    public Cursor newListCursor() {
+        return new ListCursor();
+    }
+
+    private class ListCursor extends AbstractCursor {
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return ForecastFragment.FORECAST_COLUMNS;
+        }
+
+        @Override
+        public String getString(int column) {
+            switch (column) {
+                case ForecastFragment.COL_WEATHER_DESC:
+                    return mShortDescs[getPosition()];
+                case ForecastFragment.COL_LOCATION_SETTING:
+                    return mLocationSetting;
+                case ForecastFragment.COL_WEATHER_MAX_TEMP:
+                case ForecastFragment.COL_WEATHER_MIN_TEMP:
+                case ForecastFragment.COL_COORD_LAT:
+                case ForecastFragment.COL_COORD_LONG:
+                    return Double.toString(getDouble(column));
+                default:
+                    return Long.toString(getLong(column));
+            }
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            int position = getPosition();
+            switch (column) {
+                case ForecastFragment.COL_WEATHER_ID:
+                    return mIds[position];
+                case ForecastFragment.COL_WEATHER_DATE:
+                    return mDates[position];
+                case ForecastFragment.COL_WEATHER_CONDITION_ID:
+                    return mWeatherIds[position];
+                default:
+                    return (long) getDouble(column);
+            }
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            int position = getPosition();
+            switch (column) {
+                case ForecastFragment.COL_WEATHER_MAX_TEMP:
+                    return mMaxTemps[position];
+                case ForecastFragment.COL_WEATHER_MIN_TEMP:
+                    return mMinTemps[position];
+                case ForecastFragment.COL_COORD_LAT:
+                    return mCoordLat;
+                case ForecastFragment.COL_COORD_LONG:
+                    return mCoordLong;
+                case ForecastFragment.COL_WEATHER_ID:
+                case ForecastFragment.COL_WEATHER_DATE:
+                case ForecastFragment.COL_WEATHER_CONDITION_ID:
+                    return getLong(column);
+                default:
+                    throw new IllegalArgumentException("Not a numeric column: " + column);
+            }
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return (column == ForecastFragment.COL_WEATHER_DESC && null == mShortDescs[getPosition()])
+                    || (column == ForecastFragment.COL_LOCATION_SETTING && null == mLocationSetting);
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -30,13 +31,13 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.PositionLookup {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -44,11 +45,15 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    final private ForecastPagingSource mPagingSource;
     final private Context mContext;
+    final private ArtCache mArtCache;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    // Where each row loaded since the last swap is, kept up to date before every notification
+    // so that the ItemChoiceManager can move selections without searching.
+    final private ItemIdIndex mPositions = new ItemIdIndex();
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +78,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            ForecastRow row = mPagingSource.getRowAt(adapterPosition);
+            if (null == row) {
+                // This row's page is still loading.
+                return;
+            }
+            mClickHandler.onClick(row.mDate, this);
             mICM.onClick(this);
         }
     }
@@ -86,10 +94,27 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
+        mArtCache = ArtCache.getInstance(context);
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Must be set before ItemChoiceManager registers its observer.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mPagingSource = new ForecastPagingSource(context, ForecastFragment.FORECAST_COLUMNS,
+                new ForecastPagingSource.Callback() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                indexPositions(positionStart, itemCount);
+                notifyItemRangeInserted(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                indexPositions(positionStart, itemCount);
+                notifyItemRangeChanged(positionStart, itemCount);
+            }
+        });
     }
 
     /*
@@ -122,28 +147,36 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         }
     }
 
+    /*
+        Everything shown here was formatted when the row was loaded (see ForecastRow), so binding
+        only hands ready-made values to the views and allocates nothing.  Remote art normally
+        comes decoded from ArtCache, which the sync warms up; Glide only builds a request when it
+        isn't there yet.
+     */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+        mPagingSource.onPositionBound(position);
+        ForecastRow row = mPagingSource.getRowAt(position);
+        if (null == row) {
+            // The page holding this row is being loaded; show an empty row until it arrives.
+            bindPlaceholder(forecastAdapterViewHolder);
+            mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
         }
+        boolean today = getItemViewType(position) == VIEW_TYPE_TODAY;
+        int defaultImage = today ? row.mArtResourceId : row.mIconResourceId;
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        Bitmap art = null == row.mArtUrl ? null
+                : mArtCache.peek(row.mArtUrl, today ? ArtCache.SIZE_ART : ArtCache.SIZE_ICON);
+        if ( null == row.mArtUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        } else if ( null != art ) {
+            // Cancel any request still loading into this recycled view
+            Glide.clear(forecastAdapterViewHolder.mIconView);
+            forecastAdapterViewHolder.mIconView.setImageBitmap(art);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(row.mArtUrl)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -151,40 +184,38 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.mTransitionName);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(today ? row.mDayLong : row.mDay);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.mDescription);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.mDescriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.mHigh);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.mHighA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.mLow);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.mLowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
+    private void bindPlaceholder(ForecastAdapterViewHolder vh) {
+        Glide.clear(vh.mIconView);
+        vh.mIconView.setImageDrawable(null);
+        vh.mDateView.setText(null);
+        vh.mDescriptionView.setText(null);
+        vh.mDescriptionView.setContentDescription(null);
+        vh.mHighTempView.setText(null);
+        vh.mHighTempView.setContentDescription(null);
+        vh.mLowTempView.setText(null);
+        vh.mLowTempView.setContentDescription(null);
+    }
+
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         mICM.onRestoreInstanceState(savedInstanceState);
     }
@@ -208,18 +239,79 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mPagingSource.getCount();
+    }
+
+    /*
+        Ids come from the (location, date) key rather than the row's _id, which changes every
+        time a sync replaces the row.  Rows whose page isn't resident have no id yet.
+     */
+    @Override
+    public long getItemId(int position) {
+        ForecastRow row = mPagingSource.peekRowAt(position);
+        return null == row ? RecyclerView.NO_ID : row.mId;
     }
 
+    /*
+        Rows of pages that have since been evicted stay in the index: until the next swap they
+        are still at the position they were loaded at.  Every row loaded since the swap is
+        indexed, so an id that isn't may still be in a page past the end of what has been
+        loaded; until the last page is in, ItemChoiceManager keeps it checked and asks again
+        when more rows are inserted.
+     */
+    @Override
+    public int getPositionForId(long id) {
+        int position = mPositions.get(id);
+        if (RecyclerView.NO_POSITION == position && !mPagingSource.hasReachedEnd()) {
+            return ItemChoiceManager.PositionLookup.NOT_LOADED;
+        }
+        return position;
+    }
+
+    private void indexPositions(int positionStart, int itemCount) {
+        for (int position = positionStart; position < positionStart + itemCount; position++) {
+            ForecastRow row = mPagingSource.peekRowAt(position);
+            if (null != row) {
+                mPositions.put(row.mId, position);
+            }
+        }
+    }
+
+    /**
+     * Swaps in the first page of the forecast.  Subsequent pages are loaded by the
+     * {@link ForecastPagingSource} as the list is scrolled towards them.
+     *
+     * When the cursor comes from {@link ForecastLoader} with a diff against the rows shown now,
+     * only the rows that changed are notified, so a sync that changes one day rebinds one row.
+     * Anything else (the first load, a new loader, or a list that has paged past its first page)
+     * falls back to a full refresh.
+     */
     public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+        ForecastRow[] oldRows = mPagingSource.getFirstPageRows();
+        ForecastDiff diff = newCursor instanceof ForecastLoader.RowsCursor
+                ? ((ForecastLoader.RowsCursor) newCursor).getDiff() : null;
+        boolean incremental = null != diff && null != oldRows && diff.appliesTo(oldRows)
+                && mPagingSource.getCount() == oldRows.length;
+
+        if (null == newCursor) {
+            mPagingSource.close();
+        } else {
+            String locationSetting = newCursor.moveToFirst()
+                    ? newCursor.getString(ForecastFragment.COL_LOCATION_SETTING) : null;
+            mPagingSource.swapFirstPage(newCursor, locationSetting);
+        }
+        mPositions.clear();
+        indexPositions(0, mPagingSource.getCount());
+        if (incremental) {
+            diff.dispatchTo(this, mUseTodayLayout);
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
     public Cursor getCursor() {
-        return mCursor;
+        return mPagingSource.getFirstPage();
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * The item changes that turn one set of forecast rows into another, as RecyclerView range
+ * notifications.
+ *
+ * Rows are matched by their (location, date) key.  Both sets come out of the provider ordered by
+ * that key, so the diff is a single merge pass and rows never move relative to each other: the
+ * result is only removals, insertions and in-place changes.  A row counts as changed when
+ * anything it shows differs ({@link ForecastRow#hasSameContent}), which also catches "Tomorrow"
+ * becoming "Today" and unit or art pack switches.
+ *
+ * Computed by {@link ForecastLoader} on its background thread and dispatched by
+ * {@link ForecastAdapter} when the rows are swapped in.
+ */
+public class ForecastDiff {
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_CHANGE = 2;
+
+    private final ForecastRow[] mOldRows;
+    // (op, position, count) triples, in the order they must be dispatched.  Each position is
+    // relative to the list as it stands after the operations before it.
+    private final int[] mOps;
+    private final int mOpCount;
+    // Positions in the new list whose view type may have changed because a different row is
+    // now first; -1 when unused.
+    private final int mNewFirstPosition;
+    private final int mOldFirstNewPosition;
+
+    private ForecastDiff(ForecastRow[] oldRows, int[] ops, int opCount, int newFirstPosition,
+                         int oldFirstNewPosition) {
+        mOldRows = oldRows;
+        mOps = ops;
+        mOpCount = opCount;
+        mNewFirstPosition = newFirstPosition;
+        mOldFirstNewPosition = oldFirstNewPosition;
+    }
+
+    /**
+     * @param oldRows the rows currently shown, or null if there are none
+     * @param newRows the rows about to be shown; both arrays must be ordered by key
+     */
+    public static ForecastDiff compute(ForecastRow[] oldRows, ForecastRow[] newRows) {
+        int oldCount = null == oldRows ? 0 : oldRows.length;
+        int newCount = newRows.length;
+        int[] ops = new int[3 * (oldCount + newCount)];
+        int opCount = 0;
+        int oldFirstNewPosition = -1;
+
+        int i = 0;
+        int j = 0;
+        int position = 0;
+        while (i < oldCount || j < newCount) {
+            int cmp = i == oldCount ? 1 : (j == newCount ? -1 : oldRows[i].compareKey(newRows[j]));
+            int op;
+            if (cmp < 0) {
+                op = OP_REMOVE;
+                i++;
+            } else if (cmp > 0) {
+                op = OP_INSERT;
+                j++;
+            } else {
+                if (i == 0) oldFirstNewPosition = position;
+                op = oldRows[i].hasSameContent(newRows[j]) ? -1 : OP_CHANGE;
+                i++;
+                j++;
+            }
+            if (op >= 0) {
+                int last = 3 * (opCount - 1);
+                if (opCount > 0 && ops[last] == op
+                        && ops[last + 1] + (op == OP_REMOVE ? 0 : ops[last + 2]) == position) {
+                    ops[last + 2]++;
+                } else {
+                    ops[3 * opCount] = op;
+                    ops[3 * opCount + 1] = position;
+                    ops[3 * opCount + 2] = 1;
+                    opCount++;
+                }
+            }
+            if (op != OP_REMOVE) position++;
+        }
+
+        // The first row may have its own layout, so when a different row becomes first both it
+        // and the row that used to be first need binding again.
+        int newFirstPosition = -1;
+        if (oldCount > 0 && newCount > 0 && oldFirstNewPosition != 0) {
+            newFirstPosition = 0;
+        } else {
+            oldFirstNewPosition = -1;
+        }
+        return new ForecastDiff(oldRows, ops, opCount, newFirstPosition, oldFirstNewPosition);
+    }
+
+    /**
+     * @return true if this diff was computed against rows, so that it can be applied to a list
+     * currently showing them
+     */
+    public boolean appliesTo(ForecastRow[] rows) {
+        return rows == mOldRows;
+    }
+
+    /**
+     * @return true if nothing visible changed
+     */
+    public boolean isEmpty() {
+        return mOpCount == 0 && mNewFirstPosition < 0;
+    }
+
+    /**
+     * Notifies adapter of the changes.  Call right after the adapter starts serving the new rows.
+     *
+     * @param firstRowIsSpecial true if the first row uses a different layout from the others
+     */
+    public void dispatchTo(RecyclerView.Adapter adapter, boolean firstRowIsSpecial) {
+        for (int k = 0; k < mOpCount; k++) {
+            int position = mOps[3 * k + 1];
+            int count = mOps[3 * k + 2];
+            switch (mOps[3 * k]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case OP_CHANGE:
+                    adapter.notifyItemRangeChanged(position, count);
+                    break;
+            }
+        }
+        if (firstRowIsSpecial) {
+            if (mNewFirstPosition >= 0) adapter.notifyItemChanged(mNewFirstPosition);
+            if (mOldFirstNewPosition >= 0) adapter.notifyItemChanged(mOldFirstNewPosition);
+        }
+    }
+}
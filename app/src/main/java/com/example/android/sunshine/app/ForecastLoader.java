@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.CurrentConditionsFile;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Loads the forecast list from the {@link ForecastRepository} and formats its rows on the
+ * loader's background thread.  The cursor it delivers is a {@link RowsCursor}, which behaves
+ * like the list's query result and carries the {@link ForecastRow}s built from it, plus a
+ * {@link ForecastDiff} from the rows of the previous delivery, so that the list can animate
+ * just the rows that changed.
+ *
+ * Rather than querying the provider and watching it itself, as a CursorLoader would, the loader
+ * reloads whenever the repository does, so the list costs no query of its own.
+ *
+ * On a cold start the repository has nothing in memory yet, so the first load delivers the
+ * days the last sync left in the {@link CurrentConditionsFile}, which is only a file mapping
+ * away, and the loader reloads from the repository straight after.  Rows keep their ids across
+ * the two, so the list then only animates what the database adds.
+ */
+public class ForecastLoader extends AsyncTaskLoader<Cursor> {
+    private final ForecastRepository mRepository;
+    private Cursor mCursor;
+    private boolean mListening;
+    // Only touched by loadInBackground, which never runs twice at once.
+    private boolean mTriedConditionsFile;
+    // Loads are startup phases until the whole forecast has been loaded once.
+    private boolean mRecordingStartup = true;
+    // Written on the main thread, read by loadInBackground.
+    private volatile ForecastRow[] mDeliveredRows;
+
+    private final ForecastRepository.Listener mListener = new ForecastRepository.Listener() {
+        @Override
+        public void onForecastChanged(Forecast forecast) {
+            onContentChanged();
+        }
+    };
+
+    public ForecastLoader(Context context) {
+        super(context);
+        mRepository = ForecastRepository.getInstance(context);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Forecast forecast = null;
+        boolean partial = false;
+        if (!mTriedConditionsFile && null == mRepository.peekForecast()) {
+            mTriedConditionsFile = true;
+            int phase = StartupTimeline.begin("ForecastLoader.conditionsFile");
+            forecast = Forecast.fromConditionsFile(CurrentConditionsFile.open(getContext()),
+                    Utility.getPreferredLocation(getContext()),
+                    WeatherContract.normalizeDate(System.currentTimeMillis()));
+            StartupTimeline.end(phase);
+            partial = null != forecast;
+        }
+        boolean recording = mRecordingStartup;
+        int phase = recording ? StartupTimeline.begin("ForecastLoader.load") : -1;
+        try {
+            if (null == forecast) {
+                forecast = mRepository.getForecast();
+            }
+            Cursor cursor = forecast.newListCursor();
+            ForecastRow[] rows = ForecastRow.fromCursor(getContext(), cursor);
+            mRecordingStartup = partial;
+            return new RowsCursor(cursor, rows, ForecastDiff.compute(mDeliveredRows, rows), partial);
+        } finally {
+            if (recording) {
+                StartupTimeline.end(phase);
+            }
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isReset()) {
+            if (null != cursor) cursor.close();
+            return;
+        }
+        Cursor oldCursor = mCursor;
+        mCursor = cursor;
+        mDeliveredRows = cursor instanceof RowsCursor ? ((RowsCursor) cursor).getRows() : null;
+
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+        if (cursor instanceof RowsCursor && ((RowsCursor) cursor).isPartial()) {
+            // Follow up with the whole forecast.
+            onContentChanged();
+        }
+        if (null != oldCursor && oldCursor != cursor && !oldCursor.isClosed()) {
+            oldCursor.close();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mListening) {
+            mRepository.addListener(mListener);
+            mListening = true;
+        }
+        if (null != mCursor) {
+            deliverResult(mCursor);
+        }
+        if (takeContentChanged() || null == mCursor) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        if (null != cursor && !cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mListening) {
+            mRepository.removeListener(mListener);
+            mListening = false;
+        }
+        if (null != mCursor && !mCursor.isClosed()) {
+            mCursor.close();
+        }
+        mCursor = null;
+        mDeliveredRows = null;
+    }
+
+    /**
+     * The loaded cursor plus the rows formatted from it and how they differ from the last ones.
+     */
+    public static class RowsCursor extends CursorWrapper {
+        private final ForecastRow[] mRows;
+        private final ForecastDiff mDiff;
+        private final boolean mPartial;
+
+        RowsCursor(Cursor cursor, ForecastRow[] rows, ForecastDiff diff, boolean partial) {
+            super(cursor);
+            mRows = rows;
+            mDiff = diff;
+            mPartial = partial;
+        }
+
+        /**
+         * @return true for the first few days read from the current conditions file on a cold
+         * start, which the whole forecast follows shortly
+         */
+        public boolean isPartial() {
+            return mPartial;
+        }
+
+        public ForecastRow[] getRows() {
+            return mRows;
+        }
+
+        /**
+         * @return the changes from the rows this loader delivered before these
+         */
+        public ForecastDiff getDiff() {
+            return mDiff;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Serves a location's forecast to the {@link ForecastAdapter} one page at a time.
+ *
+ * The first page is the cursor delivered by the fragment's loader, so the list paints as soon as
+ * that page is ready.  Later pages are fetched with keyset queries
+ * ({@link WeatherContract.WeatherEntry#buildWeatherLocationPageAfter}) on a background thread as
+ * the user scrolls towards them.  Every page is held as {@link ForecastRow}s formatted off the
+ * main thread; page cursors are closed as soon as their rows are built.  Only the pages around
+ * the visible range are kept; pages that scroll far away are dropped and only their starting
+ * date key is remembered, so memory stays bounded no matter how long the range is.
+ */
+public class ForecastPagingSource {
+    private static final String LOG_TAG = ForecastPagingSource.class.getSimpleName();
+
+    static final int PAGE_SIZE = 20;
+
+    // How many pages on either side of the page being bound we keep open.
+    private static final int RESIDENT_PAGE_RADIUS = 1;
+
+    // When a bind gets this close to the end of what we know about, fetch the next page.
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    /**
+     * Notified on the main thread as pages arrive.
+     */
+    public interface Callback {
+        /**
+         * Rows that were unknown until now have been appended to the end of the list.
+         */
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        /**
+         * A previously evicted page has been reloaded; its rows can now be bound for real.
+         */
+        void onItemRangeChanged(int positionStart, int itemCount);
+    }
+
+    private final Context mContext;
+    private final String[] mProjection;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
+
+    private String mLocationSetting;
+    // Owned by the loader, never closed here.
+    private Cursor mFirstPage;
+    private ForecastRow[] mFirstPageRows;
+    // Pages 1..n that are currently resident, keyed by page index.
+    private final SparseArray<ForecastRow[]> mPages = new SparseArray<ForecastRow[]>();
+    // mPageKeys[p] is the date of the last row of page p - 1, i.e. the "after" key for page p.
+    private long[] mPageKeys = new long[8];
+    private int mKnownPageCount;
+    private int mItemCount;
+    private boolean mReachedEnd;
+    private int mFocusPage;
+    // Bumped on every reset, so that pages requested for an older data set are dropped.
+    private int mGeneration;
+    // Pages for which a load has been posted but not delivered yet.
+    private final SparseArray<Boolean> mPendingPages = new SparseArray<Boolean>();
+
+    /**
+     * @param projection the columns to query; must be {@link ForecastFragment#FORECAST_COLUMNS}
+     *                   or a superset in the same order, since rows are built from it
+     */
+    public ForecastPagingSource(Context context, String[] projection, Callback callback) {
+        mContext = context.getApplicationContext();
+        mProjection = projection;
+        mCallback = callback;
+    }
+
+    /**
+     * Starts over with a new first page, typically a fresh loader delivery.  Passing null drops
+     * everything.
+     *
+     * @param firstPage the first page of the forecast, at most {@link #PAGE_SIZE} rows long
+     * @param locationSetting the location the page was queried for
+     */
+    public void swapFirstPage(Cursor firstPage, String locationSetting) {
+        dropPages();
+        mGeneration++;
+        mFirstPage = firstPage;
+        mLocationSetting = locationSetting;
+        mFocusPage = 0;
+        if (null == firstPage) {
+            mFirstPageRows = null;
+            mKnownPageCount = 0;
+            mItemCount = 0;
+            mReachedEnd = true;
+            return;
+        }
+        // ForecastLoader has already built the rows in the background; anything else gets
+        // them built here.
+        mFirstPageRows = firstPage instanceof ForecastLoader.RowsCursor
+                ? ((ForecastLoader.RowsCursor) firstPage).getRows()
+                : ForecastRow.fromCursor(mContext, firstPage);
+        int count = mFirstPageRows.length;
+        mKnownPageCount = 1;
+        mItemCount = count;
+        mReachedEnd = count < PAGE_SIZE;
+        if (!mReachedEnd) {
+            setPageKey(1, mFirstPageRows[count - 1].mDate);
+        }
+    }
+
+    /**
+     * @return the number of rows known so far.  This grows as the user scrolls towards the end.
+     */
+    public int getCount() {
+        return mItemCount;
+    }
+
+    /**
+     * @return true once a page shorter than {@link #PAGE_SIZE} has been loaded, so that
+     * {@link #getCount} is the whole forecast
+     */
+    public boolean hasReachedEnd() {
+        return mReachedEnd;
+    }
+
+    public Cursor getFirstPage() {
+        return mFirstPage;
+    }
+
+    /**
+     * @return the rows of the first page, or null if there is none
+     */
+    public ForecastRow[] getFirstPageRows() {
+        return mFirstPageRows;
+    }
+
+    /**
+     * Like {@link #getRowAt} but never schedules a load.
+     */
+    public ForecastRow peekRowAt(int position) {
+        if (position < 0 || position >= mItemCount) return null;
+        int page = position / PAGE_SIZE;
+        ForecastRow[] rows = page == 0 ? mFirstPageRows : mPages.get(page);
+        int index = position - page * PAGE_SIZE;
+        return null != rows && index < rows.length ? rows[index] : null;
+    }
+
+    /**
+     * Returns the row at the given list position, or null if that row's page isn't resident.
+     * In the latter case a load has been scheduled and the callback will fire once the row can
+     * be bound.
+     */
+    public ForecastRow getRowAt(int position) {
+        if (position < 0 || position >= mItemCount) return null;
+        int page = position / PAGE_SIZE;
+        ForecastRow[] rows = page == 0 ? mFirstPageRows : mPages.get(page);
+        if (null == rows) {
+            requestPage(page);
+            return null;
+        }
+        int index = position - page * PAGE_SIZE;
+        return index < rows.length ? rows[index] : null;
+    }
+
+    /**
+     * Called for every bind, so that pages near the visible range get loaded and pages far
+     * from it get evicted.
+     */
+    public void onPositionBound(int position) {
+        int page = position / PAGE_SIZE;
+        if (page != mFocusPage) {
+            mFocusPage = page;
+            evictDistantPages();
+        }
+        for (int p = Math.max(1, page - RESIDENT_PAGE_RADIUS);
+             p <= page + RESIDENT_PAGE_RADIUS && p < mKnownPageCount; p++) {
+            if (null == mPages.get(p)) requestPage(p);
+        }
+        if (!mReachedEnd && position >= mItemCount - PREFETCH_DISTANCE) {
+            requestPage(mKnownPageCount);
+        }
+    }
+
+    /**
+     * Drops every page and stops the background thread.
+     */
+    public void close() {
+        swapFirstPage(null, null);
+        if (null != mWorkerThread) {
+            mWorkerThread.quit();
+            mWorkerThread = null;
+            mWorkerHandler = null;
+        }
+    }
+
+    private void requestPage(final int page) {
+        if (page == 0 || page > mKnownPageCount || null == mLocationSetting) return;
+        if (page == mKnownPageCount && mReachedEnd) return;
+        if (null != mPendingPages.get(page)) return;
+        mPendingPages.put(page, Boolean.TRUE);
+
+        final int generation = mGeneration;
+        final Uri pageUri = WeatherContract.WeatherEntry.buildWeatherLocationPageAfter(
+                mLocationSetting, mPageKeys[page], PAGE_SIZE);
+        getWorkerHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                Cursor cursor = mContext.getContentResolver()
+                        .query(pageUri, mProjection, null, null, null);
+                final ForecastRow[] rows;
+                if (null != cursor) {
+                    rows = ForecastRow.fromCursor(mContext, cursor);
+                    cursor.close();
+                } else {
+                    rows = null;
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(generation, page, rows);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int generation, int page, ForecastRow[] rows) {
+        if (generation != mGeneration) return;
+        mPendingPages.remove(page);
+        if (null == rows) return;
+
+        int count = rows.length;
+        boolean appended = page == mKnownPageCount;
+        if (appended) {
+            mKnownPageCount++;
+            mItemCount += count;
+            mReachedEnd = count < PAGE_SIZE;
+            if (!mReachedEnd) {
+                setPageKey(page + 1, rows[count - 1].mDate);
+            }
+        }
+
+        if (Math.abs(page - mFocusPage) > RESIDENT_PAGE_RADIUS && !appended) {
+            // The user scrolled away while we were loading.
+            return;
+        }
+        mPages.put(page, rows);
+
+        if (appended) {
+            if (count > 0) mCallback.onItemRangeInserted(page * PAGE_SIZE, count);
+        } else {
+            mCallback.onItemRangeChanged(page * PAGE_SIZE, count);
+        }
+        evictDistantPages();
+    }
+
+    private void evictDistantPages() {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            int page = mPages.keyAt(i);
+            if (Math.abs(page - mFocusPage) > RESIDENT_PAGE_RADIUS) {
+                mPages.removeAt(i);
+            }
+        }
+    }
+
+    private void dropPages() {
+        mPages.clear();
+        mPendingPages.clear();
+    }
+
+    private void setPageKey(int page, long afterDate) {
+        if (page >= mPageKeys.length) {
+            long[] grown = new long[Math.max(page + 1, mPageKeys.length * 2)];
+            System.arraycopy(mPageKeys, 0, grown, 0, mPageKeys.length);
+            mPageKeys = grown;
+        }
+        mPageKeys[page] = afterDate;
+    }
+
+    private Handler getWorkerHandler() {
+        if (null == mWorkerHandler) {
+            mWorkerThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            mWorkerThread.start();
+            mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        }
+        return mWorkerHandler;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the preferred location's forecast in memory for the whole app, so that the forecast
+ * list, the detail pane and the detail widget share one copy instead of each querying the
+ * provider.
+ *
+ * The copy is a {@link Forecast} covering the same days as the list's first page.  It is
+ * reloaded at most once per change: any change to the weather table, a new preferred location
+ * or a new day marks it stale, and the next {@link #getForecast()} (or the background reload
+ * that runs right away while someone is listening) queries the provider once and every consumer
+ * gets the result.
+ */
+public class ForecastRepository {
+    private static final String LOG_TAG = ForecastRepository.class.getSimpleName();
+
+    // Matches the list's first page; later pages are still queried as the list scrolls.
+    static final int MAX_DAYS = ForecastPagingSource.PAGE_SIZE;
+
+    /**
+     * Notified on the main thread after every reload.
+     */
+    public interface Listener {
+        void onForecastChanged(Forecast forecast);
+    }
+
+    private static ForecastRepository sInstance;
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Handler mWorkerHandler;
+
+    // Main thread only.
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+
+    // Bumped on every change that may make mForecast stale.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // Guards loading, so that concurrent callers share one query.
+    private final Object mLoadLock = new Object();
+    private int mLoadedGeneration = -1;
+    private volatile Forecast mForecast;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
+
+    // Held in a field because SharedPreferences only keeps weak references to its listeners.
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            if (mContext.getString(R.string.pref_location_key).equals(key)) {
+                invalidate();
+            }
+        }
+    };
+
+    private final Runnable mReload = new Runnable() {
+        @Override
+        public void run() {
+            final Forecast forecast = getForecast();
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = mListeners.size() - 1; i >= 0; i--) {
+                        mListeners.get(i).onForecastChanged(forecast);
+                    }
+                }
+            });
+        }
+    };
+
+    private final Runnable mPreload = new Runnable() {
+        @Override
+        public void run() {
+            int phase = StartupTimeline.begin("ForecastRepository.preload");
+            getForecast();
+            StartupTimeline.end(phase);
+        }
+    };
+
+    private final Runnable mReloadIfObserved = new Runnable() {
+        @Override
+        public void run() {
+            if (!mListeners.isEmpty()) {
+                // Coalesces a burst of changes (a sync notifies more than once) into one query.
+                mWorkerHandler.removeCallbacks(mReload);
+                mWorkerHandler.post(mReload);
+            }
+        }
+    };
+
+    private ForecastRepository(Context context) {
+        mContext = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mWorkerHandler = new Handler(thread.getLooper());
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                mObserver);
+        PreferenceManager.getDefaultSharedPreferences(mContext)
+                .registerOnSharedPreferenceChangeListener(mPreferenceListener);
+    }
+
+    public static synchronized ForecastRepository getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new ForecastRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the current forecast, querying the provider first if it is stale.  May block on
+     * the disk, so call it off the main thread.
+     */
+    public Forecast getForecast() {
+        synchronized (mLoadLock) {
+            int generation = mGeneration.get();
+            Forecast forecast = mForecast;
+            if (generation != mLoadedGeneration || !isCurrent(forecast)) {
+                forecast = load();
+                mForecast = forecast;
+                mLoadedGeneration = generation;
+            }
+            return forecast;
+        }
+    }
+
+    /**
+     * Starts loading the forecast on the repository's thread if it is stale, so that a
+     * {@link #getForecast()} soon after finds it loaded, or waits less.
+     */
+    public void preload() {
+        mWorkerHandler.post(mPreload);
+    }
+
+    /**
+     * Returns the last forecast loaded without touching the disk, or null if none has been.  It
+     * may be stale, in which case listeners will hear about the fresh one shortly.  Safe to call
+     * on the main thread.
+     */
+    public Forecast peekForecast() {
+        return mForecast;
+    }
+
+    /**
+     * Must be called on the main thread.  Listeners are held strongly; remove them when done.
+     */
+    public void addListener(Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Marks the forecast stale.  Provider changes do this on their own, but their notification
+     * arrives asynchronously; call this after writing weather data when a consumer may read the
+     * forecast before then.
+     */
+    public void invalidate() {
+        mGeneration.incrementAndGet();
+        mMainHandler.post(mReloadIfObserved);
+    }
+
+    private boolean isCurrent(Forecast forecast) {
+        return null != forecast
+                && forecast.getLocationSetting().equals(Utility.getPreferredLocation(mContext))
+                && forecast.getStartDate() == WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    private Forecast load() {
+        String locationSetting = Utility.getPreferredLocation(mContext);
+        long startDate = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Uri uri = WeatherEntry.buildWeatherLocationPage(locationSetting, startDate, MAX_DAYS);
+        Cursor cursor = mContext.getContentResolver().query(uri, Forecast.COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            return Forecast.fromCursor(locationSetting, startDate, cursor);
+        } finally {
+            if (null != cursor) cursor.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+
+/**
+ * Everything {@link ForecastAdapter} shows for one day, formatted ahead of time.
+ *
+ * Rows are built off the main thread, by {@link ForecastLoader} for the first page and by
+ * {@link ForecastPagingSource} for the rest, so that binding a row is nothing but handing these
+ * fields to the views.  They are immutable; a change in the data or in a setting that affects
+ * formatting (units, art pack) produces a new set of rows through a loader reload.
+ */
+public class ForecastRow {
+    // Together with mDate, the key that identifies a row across reloads.
+    public final String mLocationSetting;
+    public final long mDate;
+    // Stable adapter id derived from the key.
+    public final long mId;
+    public final int mWeatherId;
+    // "Wednesday", "Tomorrow", "Mon Jun 8"
+    public final String mDay;
+    // "Today, June 8" for today's row, otherwise the same as mDay
+    public final String mDayLong;
+    public final String mDescription;
+    public final String mDescriptionA11y;
+    public final String mHigh;
+    public final String mHighA11y;
+    public final String mLow;
+    public final String mLowA11y;
+    // Used by the "today" layout
+    public final int mArtResourceId;
+    // Used by every other row
+    public final int mIconResourceId;
+    // Null when the user picked the built-in graphics
+    public final String mArtUrl;
+    public final String mTransitionName;
+
+    private ForecastRow(Context context, Cursor cursor, boolean useLocalGraphics) {
+        mLocationSetting = cursor.getString(ForecastFragment.COL_LOCATION_SETTING);
+        mDate = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        mId = ((long) (null == mLocationSetting ? 0 : mLocationSetting.hashCode()) << 32)
+                ^ (mDate / DateUtils.DAY_IN_MILLIS);
+        mWeatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        mDay = Utility.getFriendlyDayString(context, mDate, false);
+        String dayLong = Utility.getFriendlyDayString(context, mDate, true);
+        mDayLong = dayLong.equals(mDay) ? mDay : dayLong;
+
+        mDescription = Utility.getStringForWeatherCondition(context, mWeatherId);
+        mDescriptionA11y = context.getString(R.string.a11y_forecast, mDescription);
+        mHigh = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        mHighA11y = context.getString(R.string.a11y_high_temp, mHigh);
+        mLow = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        mLowA11y = context.getString(R.string.a11y_low_temp, mLow);
+
+        mArtResourceId = Utility.getArtResourceForWeatherCondition(mWeatherId);
+        mIconResourceId = Utility.getIconResourceForWeatherCondition(mWeatherId);
+        mArtUrl = useLocalGraphics ? null : Utility.getArtUrlForWeatherCondition(context, mWeatherId);
+
+        // Unique within the list and stable across reloads, so the shared element transition
+        // can find the view again after a rotation.
+        mTransitionName = "iconView" + mDate;
+    }
+
+    /**
+     * Orders rows by location, then date, which is the order the forecast is queried in.
+     */
+    public int compareKey(ForecastRow other) {
+        if (!TextUtils.equals(mLocationSetting, other.mLocationSetting)) {
+            if (null == mLocationSetting) return -1;
+            if (null == other.mLocationSetting) return 1;
+            return mLocationSetting.compareTo(other.mLocationSetting);
+        }
+        return mDate < other.mDate ? -1 : (mDate == other.mDate ? 0 : 1);
+    }
+
+    /**
+     * @return true if binding other would show exactly what binding this row shows
+     */
+    public boolean hasSameContent(ForecastRow other) {
+        return mWeatherId == other.mWeatherId
+                && mDay.equals(other.mDay)
+                && mDayLong.equals(other.mDayLong)
+                && mDescription.equals(other.mDescription)
+                && mDescriptionA11y.equals(other.mDescriptionA11y)
+                && mHigh.equals(other.mHigh)
+                && mHighA11y.equals(other.mHighA11y)
+                && mLow.equals(other.mLow)
+                && mLowA11y.equals(other.mLowA11y)
+                && TextUtils.equals(mArtUrl, other.mArtUrl);
+    }
+
+    /**
+     * Builds a row for every row of cursor, which must use {@link ForecastFragment#FORECAST_COLUMNS}.
+     * Does disk reads (preferences) and formatting, so call it off the main thread.
+     */
+    public static ForecastRow[] fromCursor(Context context, Cursor cursor) {
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        boolean useLocalGraphics = Utility.usingLocalGraphics(context);
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            rows[i] = new ForecastRow(context, cursor, useLocalGraphics);
+        }
+        return rows;
+    }
+}
@@ -19,7 +19,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -27,15 +26,38 @@ import android.util.SparseBooleanArray;
 import android.widget.AbsListView;
 import android.widget.Checkable;
 
+import java.util.Arrays;
+
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  With stable
+ * ids it also remembers which items were selected, and moves their selection along with them
+ * when the data set changes.  Adapters that implement {@link PositionLookup} tell it where each
+ * id went, so that costs one lookup per checked item however long the list is; for other
+ * adapters it searches near the item's last known position.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private final String SELECTED_ITEMS_KEY = "SIK";
     private int mChoiceMode;
 
+    /**
+     * Implemented by adapters with stable ids that keep an index from id to position, updated
+     * before they notify a change.
+     */
+    public interface PositionLookup {
+        /**
+         * Returned for an id that may be in a part of the data set that hasn't been loaded yet.
+         * The item stays checked, though at no position, until it is loaded or known gone.
+         */
+        int NOT_LOADED = -2;
+
+        /**
+         * @return the position of the item with the given id, {@link #NOT_LOADED}, or
+         * {@link RecyclerView#NO_POSITION} if it is no longer in the data set
+         */
+        int getPositionForId(long id);
+    }
+
     private RecyclerView.Adapter mAdapter;
     private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
         @Override
@@ -44,6 +66,22 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        // Rows inserted or removed in front of a checked row shift its position.
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +91,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -72,13 +111,17 @@ public class ItemChoiceManager {
      * If there is a value for a given key, the checked state for that ID is true
      * and the value holds the last known position in the adapter for that id.
      */
-    LongSparseArray<Integer> mCheckedIdStates = new LongSparseArray<Integer>();
+    ItemIdIndex mCheckedIdStates = new ItemIdIndex();
+
+    // The next mCheckedIdStates, filled in while the current one is walked; the two swap.
+    private ItemIdIndex mConfirmedIdStates = new ItemIdIndex();
+    // Confirmed positions, sorted so that they can be appended to mCheckStates.
+    private int[] mConfirmedPositions = new int[0];
 
     public void onClick(RecyclerView.ViewHolder vh) {
         if (mChoiceMode == AbsListView.CHOICE_MODE_NONE)
             return;
 
-        int checkedItemCount = mCheckStates.size();
         int position = vh.getAdapterPosition();
 
         if (position == RecyclerView.NO_POSITION) {
@@ -86,37 +129,50 @@ public class ItemChoiceManager {
             return;
         }
 
-        switch (mChoiceMode) {
-            case AbsListView.CHOICE_MODE_NONE:
-                break;
-            case AbsListView.CHOICE_MODE_SINGLE: {
-                boolean checked = mCheckStates.get(position, false);
-                if (!checked) {
-                    for (int i = 0; i < checkedItemCount; i++) {
-                        mAdapter.notifyItemChanged(mCheckStates.keyAt(i));
-                    }
-                    mCheckStates.clear();
-                    mCheckStates.put(position, true);
-                    mCheckedIdStates.clear();
-                    mCheckedIdStates.put(mAdapter.getItemId(position), position);
+        if (mChoiceMode == AbsListView.CHOICE_MODE_MULTIPLE_MODAL) {
+            throw new RuntimeException("Multiple Modal not implemented in ItemChoiceManager.");
+        }
+        if (mChoiceMode == AbsListView.CHOICE_MODE_SINGLE) {
+            if (!mCheckStates.get(position, false)) {
+                setItemChecked(position, true);
+            }
+        } else {
+            setItemChecked(position, !mCheckStates.get(position, false));
+        }
+        // We directly call onBindViewHolder here because notifying that an item has
+        // changed on an item that has the focus causes it to lose focus, which makes
+        // keyboard navigation a bit annoying
+        mAdapter.onBindViewHolder(vh, position);
+    }
+
+    /**
+     * Sets the checked state of the specified position, without rebinding it.  In
+     * AbsListView.CHOICE_MODE_SINGLE, checking a position unchecks the previously checked one,
+     * which is notified as changed.
+     */
+    public void setItemChecked(int position, boolean checked) {
+        if (mChoiceMode == AbsListView.CHOICE_MODE_NONE) {
+            return;
+        }
+        final boolean hasStableIds = mAdapter.hasStableIds();
+        if (mChoiceMode == AbsListView.CHOICE_MODE_SINGLE && checked) {
+            int checkedItemCount = mCheckStates.size();
+            for (int i = 0; i < checkedItemCount; i++) {
+                if (mCheckStates.keyAt(i) != position) {
+                    mAdapter.notifyItemChanged(mCheckStates.keyAt(i));
                 }
-                // We directly call onBindViewHolder here because notifying that an item has
-                // changed on an item that has the focus causes it to lose focus, which makes
-                // keyboard navigation a bit annoying
-                mAdapter.onBindViewHolder(vh, position);
-                break;
             }
-            case AbsListView.CHOICE_MODE_MULTIPLE: {
-                boolean checked = mCheckStates.get(position, false);
-                mCheckStates.put(position, !checked);
-                // We directly call onBindViewHolder here because notifying that an item has
-                // changed on an item that has the focus causes it to lose focus, which makes
-                // keyboard navigation a bit annoying
-                mAdapter.onBindViewHolder(vh, position);
-                break;
+            clearSelections();
+        }
+        if (checked) {
+            mCheckStates.put(position, true);
+            if (hasStableIds) {
+                mCheckedIdStates.put(mAdapter.getItemId(position), position);
             }
-            case AbsListView.CHOICE_MODE_MULTIPLE_MODAL: {
-                throw new RuntimeException("Multiple Modal not implemented in ItemChoiceManager.");
+        } else {
+            mCheckStates.delete(position);
+            if (hasStableIds) {
+                mCheckedIdStates.remove(mAdapter.getItemId(position));
             }
         }
     }
@@ -127,7 +183,8 @@ public class ItemChoiceManager {
      * AbsListView.CHOICE_MODE_SINGLE, the RecyclerView allows up to one item to  be in a
      * chosen state.
      *
-     * @param choiceMode One of AbsListView.CHOICE_MODE_NONE, AbsListView.CHOICE_MODE_SINGLE
+     * @param choiceMode One of AbsListView.CHOICE_MODE_NONE, AbsListView.CHOICE_MODE_SINGLE,
+     *                   AbsListView.CHOICE_MODE_MULTIPLE
      */
     public void setChoiceMode(int choiceMode) {
         if (mChoiceMode != choiceMode) {
@@ -154,38 +211,63 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
+    /*
+        Runs on every change notification, so it costs one lookup per checked item when the
+        adapter keeps an id index.  The checked ids are copied into the spare table rather than
+        updated in place, since the walk can't modify the table it walks, and the positions are
+        sorted before they go into mCheckStates so that each is an append rather than an insert.
+     */
     void confirmCheckedPositionsById(int oldItemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
+        mConfirmedIdStates.clear();
 
-        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
-            final long id = mCheckedIdStates.keyAt(checkedIndex);
-            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
-
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
+        final PositionLookup lookup = mAdapter instanceof PositionLookup
+                ? (PositionLookup) mAdapter : null;
+        final ItemIdIndex checkedIds = mCheckedIdStates;
+        if (mConfirmedPositions.length < checkedIds.size()) {
+            mConfirmedPositions = new int[checkedIds.capacity() / 2];
+        }
+        int confirmed = 0;
+        for (int slot = 0; slot < checkedIds.capacity(); slot++) {
+            if (!checkedIds.isUsed(slot)) {
+                continue;
+            }
+            final long id = checkedIds.idAt(slot);
+            final int position = null != lookup
+                    ? lookup.getPositionForId(id)
+                    : searchPositionForId(id, checkedIds.positionAt(slot), oldItemCount);
+            // If the ID is gone, uncheck it.  If it isn't loaded yet, keep it with its last known
+            // position, so it is confirmed again once its rows are inserted.
+            if (position == PositionLookup.NOT_LOADED) {
+                mConfirmedIdStates.put(id, checkedIds.positionAt(slot));
+            } else if (position != RecyclerView.NO_POSITION) {
+                mConfirmedPositions[confirmed++] = position;
+                mConfirmedIdStates.put(id, position);
+            }
+        }
+        Arrays.sort(mConfirmedPositions, 0, confirmed);
+        for (int i = 0; i < confirmed; i++) {
+            mCheckStates.append(mConfirmedPositions[i], true);
+        }
 
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
-            } else {
-                mCheckStates.put(lastPos, true);
+        mCheckedIdStates = mConfirmedIdStates;
+        mConfirmedIdStates = checkedIds;
+    }
+
+    private int searchPositionForId(long id, int lastPos, int itemCount) {
+        if (lastPos >= 0 && lastPos < itemCount && id == mAdapter.getItemId(lastPos)) {
+            return lastPos;
+        }
+        // Look around to see if the ID is nearby.
+        final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
+        final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, itemCount);
+        for (int searchPos = start; searchPos < end; searchPos++) {
+            if (id == mAdapter.getItemId(searchPos)) {
+                return searchPos;
             }
         }
+        return RecyclerView.NO_POSITION;
     }
 
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
@@ -216,11 +298,12 @@ public class ItemChoiceManager {
     public void onSaveInstanceState(Bundle outState) {
         Parcel outParcel = Parcel.obtain();
         outParcel.writeSparseBooleanArray(mCheckStates);
-        final int numStates = mCheckedIdStates.size();
-        outParcel.writeInt(numStates);
-        for (int i=0; i<numStates; i++) {
-            outParcel.writeLong(mCheckedIdStates.keyAt(i));
-            outParcel.writeInt(mCheckedIdStates.valueAt(i));
+        outParcel.writeInt(mCheckedIdStates.size());
+        for (int slot = 0; slot < mCheckedIdStates.capacity(); slot++) {
+            if (mCheckedIdStates.isUsed(slot)) {
+                outParcel.writeLong(mCheckedIdStates.idAt(slot));
+                outParcel.writeInt(mCheckedIdStates.positionAt(slot));
+            }
         }
         byte[] states = outParcel.marshall();
         outState.putByteArray(SELECTED_ITEMS_KEY, states);
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * Maps stable item ids to list positions without boxing either.
+ *
+ * An open-addressing hash table with linear probing over parallel primitive arrays, so lookups,
+ * insertions and removals are constant time and allocate nothing once the table has grown to
+ * the size of the list.
+ */
+public final class ItemIdIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mIds;
+    // position + 1, so that 0 marks an empty slot and any id, 0 included, can be a key
+    private int[] mPositions;
+    private int mSize;
+
+    public ItemIdIndex() {
+        mIds = new long[MIN_CAPACITY];
+        mPositions = new int[MIN_CAPACITY];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        if (mSize > 0) {
+            Arrays.fill(mPositions, 0);
+            mSize = 0;
+        }
+    }
+
+    /**
+     * @return the position recorded for the id, or {@link RecyclerView#NO_POSITION}
+     */
+    public int get(long id) {
+        int mask = mIds.length - 1;
+        for (int slot = hash(id) & mask; mPositions[slot] != 0; slot = (slot + 1) & mask) {
+            if (mIds[slot] == id) {
+                return mPositions[slot] - 1;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    public void put(long id, int position) {
+        if ((mSize + 1) * 2 > mIds.length) {
+            grow();
+        }
+        int mask = mIds.length - 1;
+        int slot = hash(id) & mask;
+        for (; mPositions[slot] != 0; slot = (slot + 1) & mask) {
+            if (mIds[slot] == id) {
+                mPositions[slot] = position + 1;
+                return;
+            }
+        }
+        mIds[slot] = id;
+        mPositions[slot] = position + 1;
+        mSize++;
+    }
+
+    public void remove(long id) {
+        int mask = mIds.length - 1;
+        int slot = hash(id) & mask;
+        for (; mPositions[slot] != 0; slot = (slot + 1) & mask) {
+            if (mIds[slot] == id) {
+                break;
+            }
+        }
+        if (mPositions[slot] == 0) {
+            return;
+        }
+        mSize--;
+        // Shift later entries of the probe run back so that no lookup stops early at the hole.
+        int hole = slot;
+        for (slot = (slot + 1) & mask; mPositions[slot] != 0; slot = (slot + 1) & mask) {
+            int home = hash(mIds[slot]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                mIds[hole] = mIds[slot];
+                mPositions[hole] = mPositions[slot];
+                hole = slot;
+            }
+        }
+        mPositions[hole] = 0;
+    }
+
+    /*
+        Entries are walked by slot: for (slot = 0; slot < capacity(); slot++) if (isUsed(slot))
+        ... idAt(slot), positionAt(slot).  The order is arbitrary and changes on every put or
+        remove, so the index must not be modified during a walk.
+     */
+    int capacity() {
+        return mIds.length;
+    }
+
+    boolean isUsed(int slot) {
+        return mPositions[slot] != 0;
+    }
+
+    long idAt(int slot) {
+        return mIds[slot];
+    }
+
+    int positionAt(int slot) {
+        return mPositions[slot] - 1;
+    }
+
+    private void grow() {
+        long[] ids = mIds;
+        int[] positions = mPositions;
+        mIds = new long[ids.length * 2];
+        mPositions = new int[ids.length * 2];
+        mSize = 0;
+        for (int slot = 0; slot < ids.length; slot++) {
+            if (positions[slot] != 0) {
+                put(ids[slot], positions[slot] - 1);
+            }
+        }
+    }
+
+    private static int hash(long id) {
+        // Multiply then fold the high bits down, since the table is indexed by the low bits and
+        // ids are often runs of consecutive numbers
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -22,17 +22,25 @@ import android.content.res.TypedArray;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.Filter;
 
 /**
  * Created by kev on 1/3/16.
  */
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    static final private int MAX_SUGGESTIONS = 8;
     private int mMinLength;
+    private AutoCompleteTextView mLocationView;
 
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -48,11 +56,48 @@ public class LocationEditTextPreference extends EditTextPreference {
     }
 
 
+    /*
+        Puts an auto-completing field, backed by the bundled CityIndex, where the preference's
+        plain EditText would go.  The EditText stays around (detached) since EditTextPreference
+        reads the result from it.
+     */
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        super.onAddEditTextToDialogView(dialogView, editText);
+        ViewGroup container = (ViewGroup) editText.getParent();
+        int index = container.indexOfChild(editText);
+        container.removeView(editText);
+
+        mLocationView = new AutoCompleteTextView(getContext());
+        // Takes over the EditText's id (android.R.id.edit), so that the dialog's saved state
+        // brings back what the user typed when it is recreated, such as on rotation
+        mLocationView.setId(editText.getId());
+        mLocationView.setInputType(editText.getInputType());
+        mLocationView.setSingleLine();
+        mLocationView.setThreshold(mMinLength);
+        mLocationView.setText(getText());
+        mLocationView.setSelection(mLocationView.getText().length());
+        CityIndex cityIndex = CityIndex.getInstance(getContext());
+        if (null != cityIndex) {
+            mLocationView.setAdapter(new CitySuggestionAdapter(getContext(), cityIndex));
+        }
+        container.addView(mLocationView, index, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        if (positiveResult && null != mLocationView) {
+            getEditText().setText(mLocationView.getText());
+        }
+        super.onDialogClosed(positiveResult);
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
 
-        EditText et = getEditText();
+        EditText et = null != mLocationView ? mLocationView : getEditText();
         et.addTextChangedListener(new TextWatcher() {
 
 
@@ -79,9 +124,72 @@ public class LocationEditTextPreference extends EditTextPreference {
                     } else {
                         // Re-enable the button.
                         positiveButton.setEnabled(true);
+                        warnIfUnknown(s);
                     }
                 }
             }
         });
     }
+
+    /*
+        Flags entries that are neither a postal code nor a city we know about, before they cost
+        a sync round trip.  The bundled list can't hold every place the weather server knows, so
+        this only warns; the user can still save the location.
+     */
+    private void warnIfUnknown(CharSequence location) {
+        CityIndex cityIndex = CityIndex.getInstance(getContext());
+        if (null == mLocationView || null == cityIndex) return;
+        boolean postalCode = false;
+        for (int i = 0; i < location.length() && !postalCode; i++) {
+            postalCode = Character.isDigit(location.charAt(i));
+        }
+        if (postalCode || cityIndex.contains(location)) {
+            mLocationView.setError(null);
+        } else {
+            mLocationView.setError(getContext().getString(R.string.pref_location_not_found));
+        }
+    }
+
+    /*
+        Suggests cities from the index.  Filtering already runs off the main thread.
+     */
+    private static class CitySuggestionAdapter extends ArrayAdapter<String> {
+        private final CityIndex mCityIndex;
+        private final Filter mFilter = new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                FilterResults results = new FilterResults();
+                if (TextUtils.isEmpty(constraint)) return results;
+                String[] matches = new String[MAX_SUGGESTIONS];
+                int count = mCityIndex.findPrefix(constraint, matches);
+                String[] values = new String[count];
+                System.arraycopy(matches, 0, values, 0, count);
+                results.values = values;
+                results.count = count;
+                return results;
+            }
+
+            @Override
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                setNotifyOnChange(false);
+                clear();
+                if (null != results.values) {
+                    for (String city : (String[]) results.values) {
+                        add(city);
+                    }
+                }
+                notifyDataSetChanged();
+            }
+        };
+
+        CitySuggestionAdapter(Context context, CityIndex cityIndex) {
+            super(context, android.R.layout.simple_dropdown_item_1line);
+            mCityIndex = cityIndex;
+        }
+
+        @Override
+        public Filter getFilter() {
+            return mFilter;
+        }
+    }
 }
@@ -15,9 +15,11 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
@@ -29,28 +31,78 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
 import com.example.android.sunshine.app.gcm.RegistrationIntentService;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.wearable.WearableSync;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
-    private static final String DETAILFRAGMENT_TAG = "DFTAG";
+    static final String DETAILFRAGMENT_TAG = "DFTAG";
     private final static int PLAY_SERVICES_RESOLUTION_REQUEST = 9000;
     public static final String SENT_TOKEN_TO_SERVER = "sentTokenToServer";
 
     private boolean mTwoPane;
     private String mLocation;
 
+    // Work that isn't needed for the first frame, run once it has been drawn.
+    private final Runnable mDeferredInit = new Runnable() {
+        @Override
+        public void run() {
+            if (isFinishing()) return;
+            int phase = StartupTimeline.begin("MainActivity.deferredInit");
+
+            // AccountManager and the sync settings are binder calls; keep them off this thread.
+            // AsyncTask's shared background thread runs them, rather than a new thread per
+            // onCreate.
+            final Context appContext = getApplicationContext();
+            AsyncTask.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int syncPhase = StartupTimeline.begin("SunshineSyncAdapter.initializeSyncAdapter");
+                    SunshineSyncAdapter.initializeSyncAdapter(appContext);
+                    StartupTimeline.end(syncPhase);
+                }
+            });
+
+            // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
+            // skip the registration and this device will not receive any downstream messages from
+            // our fake server. Because weather alerts are not a core feature of the app, this should
+            // not affect the behavior of the app, from a user perspective.
+            if (checkPlayServices()) {
+                // Because this is the initial creation of the app, we'll want to be certain we have
+                // a token. If we do not, then we will start the IntentService that will register this
+                // application with GCM.
+                SharedPreferences sharedPreferences =
+                        PreferenceManager.getDefaultSharedPreferences(MainActivity.this);
+                boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
+                if (!sentToken) {
+                    Intent intent = new Intent(MainActivity.this, RegistrationIntentService.class);
+                    startService(intent);
+                }
+            }
+            StartupTimeline.end(phase);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        int phase = StartupTimeline.begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
+        // Start reading the forecast while the views are inflated.
+        ForecastRepository.getInstance(this).preload();
 
+        int inflate = StartupTimeline.begin("MainActivity.setContentView");
         setContentView(R.layout.activity_main);
+        StartupTimeline.end(inflate);
         Toolbar toolbar = (Toolbar)findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
         getSupportActionBar().setDisplayShowTitleEnabled(false);
@@ -77,24 +129,30 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                 .findFragmentById(R.id.fragment_forecast));
         forecastFragment.setUseTodayLayout(!mTwoPane);
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
-
-        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
-        // skip the registration and this device will not receive any downstream messages from
-        // our fake server. Because weather alerts are not a core feature of the app, this should
-        // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
-            SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
-            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
-            if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTimeline.mark("first frame");
+                // Posted, so it runs after this frame has been drawn.
+                decorView.post(mDeferredInit);
+                return true;
             }
-        }
+        });
+        StartupTimeline.end(phase);
+    }
+
+    /*
+        Adds the startup timeline to
+        adb shell dumpsys activity com.example.android.sunshine.app/.MainActivity
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        StartupTimeline.dump(prefix, writer);
+        RefreshGate.dump(this, prefix, writer);
+        WearableSync.dump(prefix, writer);
     }
 
     @Override
@@ -141,7 +199,16 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
-            // In two-pane mode, show the detail view in this activity by
+            // Arrowing through the list picks a day per key press, so rebind the detail pane
+            // that's already there rather than building a new one each time.
+            DetailFragment detail = (DetailFragment)getSupportFragmentManager()
+                    .findFragmentByTag(DETAILFRAGMENT_TAG);
+            if ( null != detail && null != detail.getView() ) {
+                detail.showDay(contentUri);
+                return;
+            }
+
+            // Otherwise show the detail view in this activity by
             // adding or replacing the detail fragment using a
             // fragment transaction.
             Bundle args = new Bundle();
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.PrintWriter;
+
+/**
+ * Lets the widgets and the wearable skip a refresh when what they would show hasn't changed
+ * since they last pushed it.
+ *
+ * Each consumer hashes the values it displays with a {@link Hasher} and asks
+ * {@link #shouldSkip} before building anything.  Once the refresh has gone out it reports the
+ * hash with {@link #onRefreshed}.  The last hash and the number of skipped and performed
+ * refreshes are kept per consumer in a preferences file, so they survive the process.
+ */
+public final class RefreshGate {
+    private static final String LOG_TAG = RefreshGate.class.getSimpleName();
+
+    public static final String TODAY_WIDGET = "today_widget";
+    public static final String DETAIL_WIDGET = "detail_widget";
+    public static final String WEARABLE = "wearable";
+
+    private static final String PREFS_NAME = "refresh_gate";
+    private static final String SUFFIX_HASH = ".hash";
+    private static final String SUFFIX_SKIPPED = ".skipped";
+    private static final String SUFFIX_PERFORMED = ".performed";
+
+    private RefreshGate() {
+    }
+
+    /**
+     * 64-bit FNV-1a over the values a consumer displays.
+     */
+    public static final class Hasher {
+        private long mHash = 0xcbf29ce484222325L;
+
+        public Hasher add(long value) {
+            for (int i = 0; i < 8; i++) {
+                mHash ^= value & 0xff;
+                mHash *= 0x100000001b3L;
+                value >>>= 8;
+            }
+            return this;
+        }
+
+        public Hasher add(double value) {
+            return add(Double.doubleToLongBits(value));
+        }
+
+        public Hasher add(boolean value) {
+            return add(value ? 1 : 0);
+        }
+
+        public Hasher add(String value) {
+            if (null == value) {
+                return add(-1);
+            }
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                mHash ^= value.charAt(i);
+                mHash *= 0x100000001b3L;
+            }
+            // So that ("ab", "c") and ("a", "bc") differ
+            return add(length);
+        }
+
+        public Hasher add(byte[] value) {
+            if (null == value) {
+                return add(-1);
+            }
+            for (byte b : value) {
+                mHash ^= b & 0xff;
+                mHash *= 0x100000001b3L;
+            }
+            return add(value.length);
+        }
+
+        public long get() {
+            return mHash;
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if the consumer last pushed exactly this
+     */
+    public static boolean isCurrent(Context context, String consumer, long hash) {
+        SharedPreferences preferences = getPreferences(context);
+        String key = consumer + SUFFIX_HASH;
+        return preferences.contains(key) && preferences.getLong(key, 0) == hash;
+    }
+
+    /**
+     * @return true, counting a skipped refresh, if the consumer last pushed exactly this
+     */
+    public static synchronized boolean shouldSkip(Context context, String consumer, long hash) {
+        if (!isCurrent(context, consumer, hash)) {
+            return false;
+        }
+        SharedPreferences preferences = getPreferences(context);
+        int skipped = preferences.getInt(consumer + SUFFIX_SKIPPED, 0) + 1;
+        preferences.edit().putInt(consumer + SUFFIX_SKIPPED, skipped).apply();
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, consumer + " unchanged, skipped (" + skipped + " skipped, "
+                    + getPerformedCount(context, consumer) + " performed)");
+        }
+        return true;
+    }
+
+    /**
+     * Records that the consumer has pushed what the hash describes, counting a performed
+     * refresh.
+     */
+    public static synchronized void onRefreshed(Context context, String consumer, long hash) {
+        SharedPreferences preferences = getPreferences(context);
+        int performed = preferences.getInt(consumer + SUFFIX_PERFORMED, 0) + 1;
+        preferences.edit()
+                .putLong(consumer + SUFFIX_HASH, hash)
+                .putInt(consumer + SUFFIX_PERFORMED, performed)
+                .apply();
+    }
+
+    public static int getSkippedCount(Context context, String consumer) {
+        return getPreferences(context).getInt(consumer + SUFFIX_SKIPPED, 0);
+    }
+
+    public static int getPerformedCount(Context context, String consumer) {
+        return getPreferences(context).getInt(consumer + SUFFIX_PERFORMED, 0);
+    }
+
+    public static void dump(Context context, String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Refreshes (performed, skipped as unchanged):");
+        for (String consumer : new String[] { TODAY_WIDGET, DETAIL_WIDGET, WEARABLE }) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(consumer);
+            writer.print("\t");
+            writer.print(getPerformedCount(context, consumer));
+            writer.print("\t");
+            writer.println(getSkippedCount(context, consumer));
+        }
+    }
+}
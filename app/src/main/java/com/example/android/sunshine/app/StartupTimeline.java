@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Records when each phase of a cold start begins and ends, relative to the process starting
+ * (SunshineApplication.attachBaseContext), so that time to first forecast can be measured.
+ *
+ * Phases are also systrace sections, so they line up with the framework's own in a trace.  The
+ * recorded timeline is written to the log once the first forecast is on screen, and by
+ * {@code adb shell dumpsys activity com.example.android.sunshine.app/.MainActivity}.
+ */
+public final class StartupTimeline {
+    private static final String LOG_TAG = StartupTimeline.class.getSimpleName();
+
+    // Events past this are dropped; a cold start records a couple of dozen.
+    private static final int MAX_EVENTS = 64;
+
+    private static final long sOrigin = System.nanoTime();
+    private static final String[] sNames = new String[MAX_EVENTS];
+    private static final long[] sBegins = new long[MAX_EVENTS];
+    private static final long[] sEnds = new long[MAX_EVENTS];
+    private static final String[] sThreads = new String[MAX_EVENTS];
+    private static int sCount;
+    private static long sFirstForecastShown = -1;
+
+    private StartupTimeline() {
+    }
+
+    /**
+     * Starts a phase on the calling thread.  Every call must be matched by a call to
+     * {@link #end} with the returned token on the same thread.
+     */
+    public static int begin(String phase) {
+        TraceCompat.beginSection(phase);
+        synchronized (StartupTimeline.class) {
+            if (sCount == MAX_EVENTS) return -1;
+            sNames[sCount] = phase;
+            sBegins[sCount] = System.nanoTime();
+            sEnds[sCount] = -1;
+            sThreads[sCount] = Thread.currentThread().getName();
+            return sCount++;
+        }
+    }
+
+    public static void end(int token) {
+        TraceCompat.endSection();
+        synchronized (StartupTimeline.class) {
+            if (token >= 0) {
+                sEnds[token] = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Records an instant, such as the first frame being drawn.
+     */
+    public static void mark(String event) {
+        synchronized (StartupTimeline.class) {
+            if (sCount == MAX_EVENTS) return;
+            long now = System.nanoTime();
+            sNames[sCount] = event;
+            sBegins[sCount] = now;
+            sEnds[sCount] = now;
+            sThreads[sCount] = Thread.currentThread().getName();
+            sCount++;
+        }
+    }
+
+    /**
+     * Marks the first forecast of the process reaching the screen, the end of a cold start, and
+     * logs the timeline.  Later calls do nothing.
+     */
+    public static void markFirstForecastShown() {
+        synchronized (StartupTimeline.class) {
+            if (sFirstForecastShown >= 0) return;
+            sFirstForecastShown = System.nanoTime();
+        }
+        mark("first forecast shown");
+        Log.i(LOG_TAG, "Time to first forecast: " + getTimeToFirstForecastMillis() + "ms");
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, toText());
+        }
+    }
+
+    /**
+     * @return milliseconds from the first recorded event to the first forecast being shown, or
+     * -1 if it hasn't been yet
+     */
+    public static synchronized long getTimeToFirstForecastMillis() {
+        return sFirstForecastShown < 0 ? -1 : (sFirstForecastShown - sOrigin) / 1000000;
+    }
+
+    public static synchronized void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Startup timeline (ms since start, duration, thread):");
+        for (int i = 0; i < sCount; i++) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print((sBegins[i] - sOrigin) / 1000000);
+            writer.print("\t");
+            writer.print(sEnds[i] < 0 ? "..." : Long.toString((sEnds[i] - sBegins[i]) / 1000000));
+            writer.print("\t");
+            writer.print(sThreads[i]);
+            writer.print("\t");
+            writer.println(sNames[i]);
+        }
+    }
+
+    private static String toText() {
+        StringWriter text = new StringWriter();
+        dump("", new PrintWriter(text));
+        return text.toString();
+    }
+}
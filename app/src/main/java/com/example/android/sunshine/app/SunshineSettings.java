@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.Locale;
+
+/**
+ * An immutable snapshot of the user's settings.
+ *
+ * Reading a preference the usual way means looking up the SharedPreferences instance and
+ * resolving the key and default strings from resources on every call, and these settings are
+ * read for every list row, widget row and notification.  Instead the current snapshot is kept in
+ * a static field and {@link #get} is a single volatile read.  One
+ * OnSharedPreferenceChangeListener replaces the snapshot whenever a preference changes.
+ *
+ * SharedPreferences notifies listeners on the main thread, so a thread that writes a setting
+ * and reads it straight back should call {@link #refresh} in between.
+ */
+public final class SunshineSettings {
+
+    private static volatile SunshineSettings sCurrent;
+
+    // Held statically because SharedPreferences only keeps weak references to its listeners.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private final String mLocation;
+    private final boolean mMetric;
+    private final String mArtPack;
+    private final boolean mUsingLocalGraphics;
+    // Indexed by WeatherConditionCatalog kind.
+    private final String[] mArtUrls = new String[WeatherConditionCatalog.KIND_COUNT];
+    private final boolean mNotificationsEnabled;
+    private final int mLocationStatus;
+
+    private SunshineSettings(Context context, SharedPreferences prefs) {
+        mLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        mMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        mArtPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        mUsingLocalGraphics = mArtPack.equals(sunshineArtPack);
+        for (int kind = 0; kind < WeatherConditionCatalog.KIND_COUNT; kind++) {
+            mArtUrls[kind] = String.format(Locale.US, mArtPack,
+                    WeatherConditionCatalog.getArtSlug(kind));
+        }
+
+        mNotificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+
+        mLocationStatus = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+    }
+
+    /**
+     * Returns the current settings.  Only the first call reads the preferences; after that this
+     * is a field read, cheap enough for any hot path.
+     */
+    public static SunshineSettings get(Context context) {
+        SunshineSettings current = sCurrent;
+        if (null == current) {
+            current = init(context);
+        }
+        return current;
+    }
+
+    /**
+     * Re-reads the preferences now rather than waiting for the change listener, and returns the
+     * new snapshot.
+     */
+    public static SunshineSettings refresh(Context context) {
+        SharedPreferences prefs = listen(context);
+        SunshineSettings current = new SunshineSettings(context.getApplicationContext(), prefs);
+        sCurrent = current;
+        return current;
+    }
+
+    private static synchronized SunshineSettings init(Context context) {
+        if (null == sCurrent) {
+            SharedPreferences prefs = listen(context);
+            sCurrent = new SunshineSettings(context.getApplicationContext(), prefs);
+        }
+        return sCurrent;
+    }
+
+    private static synchronized SharedPreferences listen(Context context) {
+        final Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        if (null == sListener) {
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    sCurrent = new SunshineSettings(appContext, prefs);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+        }
+        return prefs;
+    }
+
+    public String getLocation() {
+        return mLocation;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return the art pack's URL format, which takes the art name ("clear", "rain"...)
+     */
+    public String getArtPack() {
+        return mArtPack;
+    }
+
+    /**
+     * @param kind a WeatherConditionCatalog kind
+     * @return the art pack's URL for that kind, null for KIND_UNKNOWN
+     */
+    public String getArtUrl(int kind) {
+        return kind == WeatherConditionCatalog.KIND_UNKNOWN ? null : mArtUrls[kind];
+    }
+
+    public boolean usingLocalGraphics() {
+        return mUsingLocalGraphics;
+    }
+
+    public boolean notificationsEnabled() {
+        return mNotificationsEnabled;
+    }
+
+    @SuppressWarnings("ResourceType")
+    public @SunshineSyncAdapter.LocationStatus int getLocationStatus() {
+        return mLocationStatus;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats dates, temperatures and wind for display, for the list, the detail pane, the widgets
+ * and the notification (all through {@link Utility}).
+ *
+ * An instance is only valid for one locale, one time zone and one day: it holds the localized
+ * format strings, per-thread SimpleDateFormats and Formatters (neither is thread-safe), and a
+ * memo of the day labels it has rendered ("Today, June 8", "Tomorrow", "Wednesday"...), all of
+ * which depend on those three things.  {@link #get} hands out the current instance and builds a
+ * new one when the day rolls over, the default locale changes, or the system reports a time zone,
+ * locale or clock change.  Nothing is ever invalidated in place, so callers on any thread always
+ * see a consistent set.
+ */
+public final class WeatherFormatter {
+
+    // Day labels are memoized for days in [today + MEMO_FIRST_DAY, today + MEMO_FIRST_DAY + MEMO_DAYS).
+    private static final int MEMO_FIRST_DAY = -7;
+    private static final int MEMO_DAYS = 64;
+
+    private static volatile WeatherFormatter sCurrent;
+    private static boolean sReceiverRegistered;
+
+    private final Locale mLocale;
+    private final TimeZone mTimeZone;
+    private final long mTodayStart;
+    private final long mTomorrowStart;
+    private final int mGmtOffSeconds;
+    private final int mTodayJulianDay;
+
+    private final String mToday;
+    private final String mTomorrow;
+    private final String mFullFriendlyDateFormat;
+    private final String mTemperatureFormat;
+    private final String mWindKmhFormat;
+    private final String mWindMphFormat;
+
+    // Strings are immutable, so racing writers can only store equal values.
+    private final String[] mFriendlyDays = new String[MEMO_DAYS];
+    private final String[] mFriendlyDaysLongToday = new String[MEMO_DAYS];
+    private final String[] mFullFriendlyDays = new String[MEMO_DAYS];
+
+    private final ThreadLocal<PerThread> mPerThread = new ThreadLocal<PerThread>() {
+        @Override
+        protected PerThread initialValue() {
+            return new PerThread(mLocale, mTimeZone);
+        }
+    };
+
+    private static final class PerThread {
+        final SimpleDateFormat mDayNameFormat;
+        final SimpleDateFormat mShortDateFormat;
+        final SimpleDateFormat mMonthDayFormat;
+        final StringBuilder mBuilder = new StringBuilder(32);
+        final Formatter mFormatter;
+
+        PerThread(Locale locale, TimeZone timeZone) {
+            mDayNameFormat = createDateFormat("EEEE", locale, timeZone);
+            mShortDateFormat = createDateFormat("EEE MMM dd", locale, timeZone);
+            mMonthDayFormat = createDateFormat("MMMM dd", locale, timeZone);
+            mFormatter = new Formatter(mBuilder, locale);
+        }
+
+        private static SimpleDateFormat createDateFormat(String pattern, Locale locale,
+                                                         TimeZone timeZone) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, locale);
+            format.setTimeZone(timeZone);
+            return format;
+        }
+
+        String format(String format, Object... args) {
+            mBuilder.setLength(0);
+            mFormatter.format(format, args);
+            return mBuilder.toString();
+        }
+    }
+
+    private WeatherFormatter(Context context, long now) {
+        mLocale = Locale.getDefault();
+        mTimeZone = TimeZone.getDefault();
+
+        Calendar calendar = Calendar.getInstance(mTimeZone, mLocale);
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        mTodayStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        mTomorrowStart = calendar.getTimeInMillis();
+
+        mGmtOffSeconds = mTimeZone.getOffset(now) / 1000;
+        mTodayJulianDay = Time.getJulianDay(now, mGmtOffSeconds);
+
+        mToday = context.getString(R.string.today);
+        mTomorrow = context.getString(R.string.tomorrow);
+        mFullFriendlyDateFormat = context.getString(R.string.format_full_friendly_date);
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mWindKmhFormat = context.getString(R.string.format_wind_kmh);
+        mWindMphFormat = context.getString(R.string.format_wind_mph);
+    }
+
+    /**
+     * Returns the formatter for the current locale, time zone and day.  Cheap after the first
+     * call of the day: a field read and a couple of comparisons.
+     */
+    public static WeatherFormatter get(Context context) {
+        WeatherFormatter current = sCurrent;
+        long now = System.currentTimeMillis();
+        if (null == current || now < current.mTodayStart || now >= current.mTomorrowStart
+                || Locale.getDefault() != current.mLocale) {
+            current = create(context, now);
+        }
+        return current;
+    }
+
+    private static synchronized WeatherFormatter create(Context context, long now) {
+        Context appContext = context.getApplicationContext();
+        if (!sReceiverRegistered) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            appContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    invalidate();
+                }
+            }, filter);
+            sReceiverRegistered = true;
+        }
+        WeatherFormatter current = new WeatherFormatter(appContext, now);
+        sCurrent = current;
+        return current;
+    }
+
+    /**
+     * Drops the current formatter; the next {@link #get} builds a new one.
+     */
+    static void invalidate() {
+        sCurrent = null;
+    }
+
+    private int memoIndex(int julianDay) {
+        int index = julianDay - mTodayJulianDay - MEMO_FIRST_DAY;
+        return index >= 0 && index < MEMO_DAYS ? index : -1;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString
+     */
+    public String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffSeconds);
+        int index = memoIndex(julianDay);
+        String[] memo = displayLongToday ? mFriendlyDaysLongToday : mFriendlyDays;
+        String label = index < 0 ? null : memo[index];
+        if (null == label) {
+            if (displayLongToday && julianDay == mTodayJulianDay) {
+                // "Today, June 24"
+                label = mPerThread.get().format(mFullFriendlyDateFormat, mToday,
+                        getFormattedMonthDay(dateInMillis));
+            } else if (julianDay < mTodayJulianDay + 7) {
+                // Less than a week in the future: just the day name
+                label = getDayName(dateInMillis, julianDay);
+            } else {
+                // "Mon Jun 3"
+                label = mPerThread.get().mShortDateFormat.format(new Date(dateInMillis));
+            }
+            if (index >= 0) memo[index] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString
+     */
+    public String getFullFriendlyDayString(long dateInMillis) {
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffSeconds);
+        int index = memoIndex(julianDay);
+        String label = index < 0 ? null : mFullFriendlyDays[index];
+        if (null == label) {
+            label = mPerThread.get().format(mFullFriendlyDateFormat,
+                    getDayName(dateInMillis, julianDay), getFormattedMonthDay(dateInMillis));
+            if (index >= 0) mFullFriendlyDays[index] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @see Utility#getDayName
+     */
+    public String getDayName(long dateInMillis) {
+        return getDayName(dateInMillis, Time.getJulianDay(dateInMillis, mGmtOffSeconds));
+    }
+
+    private String getDayName(long dateInMillis, int julianDay) {
+        if (julianDay == mTodayJulianDay) {
+            return mToday;
+        } else if (julianDay == mTodayJulianDay + 1) {
+            return mTomorrow;
+        }
+        return mPerThread.get().mDayNameFormat.format(new Date(dateInMillis));
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay
+     */
+    public String getFormattedMonthDay(long dateInMillis) {
+        return mPerThread.get().mMonthDayFormat.format(new Date(dateInMillis));
+    }
+
+    /**
+     * @param temperature in Celsius, as stored
+     * @param isMetric false to show it in Fahrenheit
+     */
+    public String formatTemperature(double temperature, boolean isMetric) {
+        if (!isMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return mPerThread.get().format(mTemperatureFormat, temperature);
+    }
+
+    /**
+     * @param windSpeed in km/h, as stored
+     * @param direction the compass direction, e.g. "NW"
+     * @param isMetric false to show the speed in mph
+     */
+    public String formatWind(float windSpeed, String direction, boolean isMetric) {
+        if (isMetric) {
+            return mPerThread.get().format(mWindKmhFormat, windSpeed, direction);
+        }
+        return mPerThread.get().format(mWindMphFormat, .621371192237334f * windSpeed, direction);
+    }
+}
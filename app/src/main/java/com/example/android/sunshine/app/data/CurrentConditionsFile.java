@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A tiny fixed-layout file holding the next few days of weather for each synced location.
+ *
+ * The widgets, the notification and the wearable service only need a handful of fields for
+ * "today", so instead of opening the provider and walking a joined cursor they map this file and
+ * read the fields at fixed offsets.  The sync adapter rewrites it after every sync
+ * (write to a temporary file, then rename, so readers never see a half-written file).
+ *
+ * Layout, all values big-endian:
+ * <pre>
+ *   header (HEADER_SIZE bytes)
+ *     int   MAGIC
+ *     short VERSION
+ *     short DAYS               days stored per location
+ *     long  sequence           incremented on every write
+ *     int   location count
+ *     int   record size
+ *   location record (RECORD_SIZE bytes) * location count
+ *     short + LOCATION_BYTES   location setting, UTF-8, length prefixed
+ *     int                      valid day count
+ *     day (DAY_SIZE bytes) * DAYS
+ *       long  date             normalized, as stored in the database
+ *       int   weather id
+ *       float max temperature
+ *       float min temperature
+ *       short + DESC_BYTES     short description, UTF-8, length prefixed
+ * </pre>
+ */
+public class CurrentConditionsFile {
+    private static final String LOG_TAG = CurrentConditionsFile.class.getSimpleName();
+
+    static final String FILE_NAME = "current_conditions.bin";
+
+    static final int MAGIC = 0x53554e43; // "SUNC"
+    static final short VERSION = 1;
+    public static final int DAYS = 5;
+    static final int MAX_LOCATIONS = 8;
+
+    private static final int LOCATION_BYTES = 62;
+    private static final int DESC_BYTES = 26;
+
+    static final int HEADER_SIZE = 4 + 2 + 2 + 8 + 4 + 4;
+    static final int DAY_SIZE = 8 + 4 + 4 + 4 + 2 + DESC_BYTES;
+    static final int RECORD_SIZE = 2 + LOCATION_BYTES + 4 + DAY_SIZE * DAYS;
+
+    private static final int OFFSET_SEQUENCE = 8;
+    private static final int OFFSET_LOCATION_COUNT = 16;
+    private static final int OFFSET_RECORD_SIZE = 20;
+
+    private static final int OFFSET_DAY_COUNT = 2 + LOCATION_BYTES;
+    private static final int OFFSET_DAYS = OFFSET_DAY_COUNT + 4;
+
+    private static final int OFFSET_DATE = 0;
+    private static final int OFFSET_WEATHER_ID = 8;
+    private static final int OFFSET_MAX_TEMP = 12;
+    private static final int OFFSET_MIN_TEMP = 16;
+    private static final int OFFSET_DESC = 20;
+
+    private static final String[] DAY_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_SHORT_DESC = 4;
+
+    private static final Object sWriteLock = new Object();
+
+    private final ByteBuffer mBuffer;
+    private final int mLocationCount;
+
+    private CurrentConditionsFile(ByteBuffer buffer) {
+        mBuffer = buffer;
+        mLocationCount = buffer.getInt(OFFSET_LOCATION_COUNT);
+    }
+
+    /**
+     * Maps the current file.  Each call maps whatever file is there now, so a reader never mixes
+     * data from two different syncs.
+     *
+     * @return the mapped file, or null if there isn't a valid one yet
+     */
+    public static CurrentConditionsFile open(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) return null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION
+                    || buffer.getShort(6) != DAYS || buffer.getInt(OFFSET_RECORD_SIZE) != RECORD_SIZE
+                    || size < HEADER_SIZE + (long) RECORD_SIZE * buffer.getInt(OFFSET_LOCATION_COUNT)) {
+                return null;
+            }
+            return new CurrentConditionsFile(buffer);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to map " + file, e);
+            return null;
+        } finally {
+            if (null != raf) {
+                // The mapping stays valid after the file is closed.
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Like {@link #open}, but if the file has nothing from today onwards for locationSetting it
+     * is first rebuilt from the database.  Must not be called on the main thread.
+     */
+    public static CurrentConditionsFile openForLocation(Context context, String locationSetting) {
+        CurrentConditionsFile conditions = open(context);
+        int record = null == conditions ? -1 : conditions.findLocation(locationSetting);
+        if (record < 0 || conditions.findDay(record, System.currentTimeMillis()) < 0) {
+            if (update(context, locationSetting)) {
+                conditions = open(context);
+            }
+        }
+        return conditions;
+    }
+
+    public long getSequence() {
+        return mBuffer.getLong(OFFSET_SEQUENCE);
+    }
+
+    public int getLocationCount() {
+        return mLocationCount;
+    }
+
+    /**
+     * @return the record index for locationSetting, or -1 if it isn't in the file
+     */
+    public int findLocation(String locationSetting) {
+        byte[] key = encode(locationSetting, LOCATION_BYTES);
+        for (int record = 0; record < mLocationCount; record++) {
+            if (matchesLocation(record, key)) return record;
+        }
+        return -1;
+    }
+
+    /*
+        Compares the stored, possibly truncated, location with a key from encode(), so that a
+        location setting longer than LOCATION_BYTES still matches its own record.
+     */
+    private boolean matchesLocation(int record, byte[] key) {
+        int offset = recordOffset(record);
+        if (mBuffer.getShort(offset) != key.length) return false;
+        int i = 0;
+        while (i < key.length && mBuffer.get(offset + 2 + i) == key[i]) i++;
+        return i == key.length;
+    }
+
+    public int getDayCount(int record) {
+        return mBuffer.getInt(recordOffset(record) + OFFSET_DAY_COUNT);
+    }
+
+    /**
+     * @return the first day of the record dated on or after the day containing timeInMillis,
+     * or -1 if the record has nothing that recent.
+     */
+    public int findDay(int record, long timeInMillis) {
+        long today = WeatherContract.normalizeDate(timeInMillis);
+        int days = getDayCount(record);
+        for (int day = 0; day < days; day++) {
+            if (getDate(record, day) >= today) return day;
+        }
+        return -1;
+    }
+
+    public long getDate(int record, int day) {
+        return mBuffer.getLong(dayOffset(record, day) + OFFSET_DATE);
+    }
+
+    public int getWeatherId(int record, int day) {
+        return mBuffer.getInt(dayOffset(record, day) + OFFSET_WEATHER_ID);
+    }
+
+    public double getMaxTemp(int record, int day) {
+        return mBuffer.getFloat(dayOffset(record, day) + OFFSET_MAX_TEMP);
+    }
+
+    public double getMinTemp(int record, int day) {
+        return mBuffer.getFloat(dayOffset(record, day) + OFFSET_MIN_TEMP);
+    }
+
+    public String getShortDesc(int record, int day) {
+        return decode(mBuffer, dayOffset(record, day) + OFFSET_DESC);
+    }
+
+    public String getLocationSetting(int record) {
+        return decode(mBuffer, recordOffset(record));
+    }
+
+    /**
+     * Rewrites the file with the next {@link #DAYS} days for locationSetting read from the
+     * provider, keeping the records of other locations.  Called by the sync adapter after every
+     * sync.  Must not be called on the main thread.
+     *
+     * @return true if a record for locationSetting was written
+     */
+    public static boolean update(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                        locationSetting, System.currentTimeMillis(), DAYS),
+                DAY_COLUMNS, null, null, null);
+        if (null == cursor) return false;
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        int days = 0;
+        try {
+            putString(record, 0, locationSetting, LOCATION_BYTES);
+            while (cursor.moveToNext() && days < DAYS) {
+                int offset = OFFSET_DAYS + days * DAY_SIZE;
+                record.putLong(offset + OFFSET_DATE, cursor.getLong(INDEX_DATE));
+                record.putInt(offset + OFFSET_WEATHER_ID, cursor.getInt(INDEX_WEATHER_ID));
+                record.putFloat(offset + OFFSET_MAX_TEMP, (float) cursor.getDouble(INDEX_MAX_TEMP));
+                record.putFloat(offset + OFFSET_MIN_TEMP, (float) cursor.getDouble(INDEX_MIN_TEMP));
+                putString(record, offset + OFFSET_DESC, cursor.getString(INDEX_SHORT_DESC), DESC_BYTES);
+                days++;
+            }
+            record.putInt(OFFSET_DAY_COUNT, days);
+        } finally {
+            cursor.close();
+        }
+        if (days == 0) return false;
+
+        synchronized (sWriteLock) {
+            CurrentConditionsFile previous = open(context);
+            ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE * MAX_LOCATIONS);
+            int count = 0;
+            // The freshest location goes first; keep as many of the others as fit.
+            out.position(HEADER_SIZE);
+            out.put(record.array());
+            count++;
+            if (null != previous) {
+                byte[] key = encode(locationSetting, LOCATION_BYTES);
+                for (int r = 0; r < previous.mLocationCount && count < MAX_LOCATIONS; r++) {
+                    if (previous.matchesLocation(r, key)) continue;
+                    for (int i = 0; i < RECORD_SIZE; i++) {
+                        out.put(previous.mBuffer.get(previous.recordOffset(r) + i));
+                    }
+                    count++;
+                }
+            }
+            out.putInt(0, MAGIC);
+            out.putShort(4, VERSION);
+            out.putShort(6, (short) DAYS);
+            out.putLong(OFFSET_SEQUENCE, null == previous ? 1 : previous.getSequence() + 1);
+            out.putInt(OFFSET_LOCATION_COUNT, count);
+            out.putInt(OFFSET_RECORD_SIZE, RECORD_SIZE);
+
+            return writeAtomically(getFile(context), out.array(), HEADER_SIZE + RECORD_SIZE * count);
+        }
+    }
+
+    /**
+     * Removes the file, e.g. when the database is wiped.
+     */
+    public static void delete(Context context) {
+        synchronized (sWriteLock) {
+            getFile(context).delete();
+        }
+    }
+
+    private static boolean writeAtomically(File file, byte[] data, int length) {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(data, 0, length);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.e(LOG_TAG, "Unable to rename " + tmp + " to " + file);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + file, e);
+            return false;
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + tmp, e);
+                }
+                tmp.delete();
+            }
+        }
+    }
+
+    private int recordOffset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    private int dayOffset(int record, int day) {
+        return recordOffset(record) + OFFSET_DAYS + day * DAY_SIZE;
+    }
+
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static void putString(ByteBuffer buffer, int offset, String value, int maxBytes) {
+        byte[] bytes = encode(value, maxBytes);
+        buffer.putShort(offset, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + 2 + i, bytes[i]);
+        }
+    }
+
+    private static String decode(ByteBuffer buffer, int offset) {
+        int length = buffer.getShort(offset);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // Strings that don't fit are cut at a character boundary.
+    private static byte[] encode(String value, int maxBytes) {
+        try {
+            byte[] bytes = value.getBytes("UTF-8");
+            if (bytes.length <= maxBytes) return bytes;
+            int length = maxBytes;
+            while (length > 0 && (bytes[length] & 0xc0) == 0x80) length--;
+            byte[] truncated = new byte[length];
+            System.arraycopy(bytes, 0, truncated, 0, length);
+            return truncated;
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
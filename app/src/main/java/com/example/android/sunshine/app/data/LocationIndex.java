@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+/**
+ * An immutable k-d tree over location coordinates, answering "which k locations are closest to
+ * this point" without scanning every row.
+ *
+ * Coordinates are projected onto the unit sphere as (x, y, z) so that straight-line distance
+ * orders points exactly like great-circle distance, with no special cases at the poles or the
+ * antimeridian.  The tree is stored implicitly: each range of the arrays is partitioned around
+ * its median on one axis, the median is the node and the two halves are its subtrees.
+ *
+ * The provider builds one of these from the location table the first time a proximity query
+ * comes in and throws it away whenever a location changes.
+ */
+public class LocationIndex {
+    static final double EARTH_RADIUS_KM = 6371.0;
+
+    private final long[] mIds;
+    private final double[] mX;
+    private final double[] mY;
+    private final double[] mZ;
+
+    /**
+     * Builds the index.  The arrays are copied, so the caller may reuse them.
+     */
+    public LocationIndex(long[] ids, double[] latitudes, double[] longitudes, int count) {
+        mIds = new long[count];
+        mX = new double[count];
+        mY = new double[count];
+        mZ = new double[count];
+        for (int i = 0; i < count; i++) {
+            mIds[i] = ids[i];
+            double lat = Math.toRadians(latitudes[i]);
+            double lon = Math.toRadians(longitudes[i]);
+            mX[i] = Math.cos(lat) * Math.cos(lon);
+            mY[i] = Math.cos(lat) * Math.sin(lon);
+            mZ[i] = Math.sin(lat);
+        }
+        build(0, count, 0);
+    }
+
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * Finds the locations closest to (lat, lon), nearest first.
+     *
+     * @param k the maximum number of locations wanted
+     * @param outIds receives the location ids; must hold at least k entries
+     * @param outDistancesKm receives the great-circle distance of each in kilometres
+     * @return the number of locations found, at most k
+     */
+    public int nearest(double lat, double lon, int k, long[] outIds, double[] outDistancesKm) {
+        k = Math.min(k, mIds.length);
+        if (k <= 0) return 0;
+        double latRad = Math.toRadians(lat);
+        double lonRad = Math.toRadians(lon);
+        Query query = new Query(k,
+                Math.cos(latRad) * Math.cos(lonRad),
+                Math.cos(latRad) * Math.sin(lonRad),
+                Math.sin(latRad));
+        search(query, 0, mIds.length, 0);
+
+        // The heap is a max-heap on distance; pop it from the back to get nearest first.
+        int found = query.mSize;
+        for (int i = found - 1; i >= 0; i--) {
+            outIds[i] = mIds[query.mHeapIndex[0]];
+            outDistancesKm[i] = chordToKm(query.mHeapDist[0]);
+            query.pop();
+        }
+        return found;
+    }
+
+    private void search(Query query, int from, int to, int axis) {
+        if (from >= to) return;
+        int mid = (from + to) >>> 1;
+        query.offer(mid, distanceSquared(mid, query.mX, query.mY, query.mZ));
+
+        double delta = coordinate(mid, axis) - query.coordinate(axis);
+        int nextAxis = axis == 2 ? 0 : axis + 1;
+        // Descend into the side the query point is on first, then the other side only if the
+        // splitting plane is closer than the current k-th best.
+        if (delta > 0) {
+            search(query, from, mid, nextAxis);
+            if (query.mSize < query.mK || delta * delta < query.mHeapDist[0]) {
+                search(query, mid + 1, to, nextAxis);
+            }
+        } else {
+            search(query, mid + 1, to, nextAxis);
+            if (query.mSize < query.mK || delta * delta < query.mHeapDist[0]) {
+                search(query, from, mid, nextAxis);
+            }
+        }
+    }
+
+    private void build(int from, int to, int axis) {
+        if (to - from <= 1) return;
+        int mid = (from + to) >>> 1;
+        select(from, to - 1, mid, axis);
+        int nextAxis = axis == 2 ? 0 : axis + 1;
+        build(from, mid, nextAxis);
+        build(mid + 1, to, nextAxis);
+    }
+
+    // Quickselect: moves the element of rank k within [left, right] on axis into position k,
+    // with elements no larger before it and elements no smaller after.  The partition is
+    // three-way so that many equal coordinates (e.g. duplicated cities) stay linear.
+    private void select(int left, int right, int k, int axis) {
+        while (right > left) {
+            double pivot = coordinate((left + right) >>> 1, axis);
+            int lt = left;
+            int gt = right;
+            int i = left;
+            while (i <= gt) {
+                double value = coordinate(i, axis);
+                if (value < pivot) {
+                    swap(lt++, i++);
+                } else if (value > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                right = lt - 1;
+            } else if (k > gt) {
+                left = gt + 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double coordinate(int i, int axis) {
+        switch (axis) {
+            case 0:
+                return mX[i];
+            case 1:
+                return mY[i];
+            default:
+                return mZ[i];
+        }
+    }
+
+    private double distanceSquared(int i, double x, double y, double z) {
+        double dx = mX[i] - x;
+        double dy = mY[i] - y;
+        double dz = mZ[i] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private void swap(int a, int b) {
+        long id = mIds[a];
+        mIds[a] = mIds[b];
+        mIds[b] = id;
+        double t = mX[a];
+        mX[a] = mX[b];
+        mX[b] = t;
+        t = mY[a];
+        mY[a] = mY[b];
+        mY[b] = t;
+        t = mZ[a];
+        mZ[a] = mZ[b];
+        mZ[b] = t;
+    }
+
+    static double chordToKm(double chordSquared) {
+        double chord = Math.sqrt(chordSquared);
+        return 2 * Math.asin(Math.min(1.0, chord / 2)) * EARTH_RADIUS_KM;
+    }
+
+    /**
+     * The query point plus a bounded max-heap of the best candidates found so far.
+     */
+    private static class Query {
+        final int mK;
+        final double mX;
+        final double mY;
+        final double mZ;
+        final int[] mHeapIndex;
+        final double[] mHeapDist;
+        int mSize;
+
+        Query(int k, double x, double y, double z) {
+            mK = k;
+            mX = x;
+            mY = y;
+            mZ = z;
+            mHeapIndex = new int[k];
+            mHeapDist = new double[k];
+        }
+
+        double coordinate(int axis) {
+            switch (axis) {
+                case 0:
+                    return mX;
+                case 1:
+                    return mY;
+                default:
+                    return mZ;
+            }
+        }
+
+        void offer(int index, double dist) {
+            if (mSize < mK) {
+                int i = mSize++;
+                mHeapIndex[i] = index;
+                mHeapDist[i] = dist;
+                siftUp(i);
+            } else if (dist < mHeapDist[0]) {
+                mHeapIndex[0] = index;
+                mHeapDist[0] = dist;
+                siftDown(0);
+            }
+        }
+
+        void pop() {
+            mSize--;
+            mHeapIndex[0] = mHeapIndex[mSize];
+            mHeapDist[0] = mHeapDist[mSize];
+            siftDown(0);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (mHeapDist[parent] >= mHeapDist[i]) return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= mSize) return;
+                int largest = left;
+                int right = left + 1;
+                if (right < mSize && mHeapDist[right] > mHeapDist[left]) largest = right;
+                if (mHeapDist[i] >= mHeapDist[largest]) return;
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int index = mHeapIndex[a];
+            mHeapIndex[a] = mHeapIndex[b];
+            mHeapIndex[b] = index;
+            double dist = mHeapDist[a];
+            mHeapDist[a] = mHeapDist[b];
+            mHeapDist[b] = dist;
+        }
+    }
+}
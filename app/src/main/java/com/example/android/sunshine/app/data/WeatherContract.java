@@ -43,6 +43,14 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_SNAPSHOT = "snapshot";
+
+    // Opening this uri for reading streams out a binary snapshot of the whole database (see
+    // WeatherSnapshot); opening it for writing replaces the database with the snapshot written.
+    public static final Uri SNAPSHOT_URI =
+            BASE_CONTENT_URI.buildUpon().appendPath(PATH_SNAPSHOT).build();
+    public static final String SNAPSHOT_TYPE =
+            "application/vnd." + CONTENT_AUTHORITY + "." + PATH_SNAPSHOT;
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -81,9 +89,28 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Only present in the results of a "near" query: the great-circle distance in
+        // kilometres from the queried point.
+        public static final String COLUMN_DISTANCE = "distance";
+
+        public static final String PATH_NEAR = "near";
+        public static final String PARAM_LAT = "lat";
+        public static final String PARAM_LON = "lon";
+        public static final String PARAM_K = "k";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /*
+            Builds the uri for the k cached locations closest to (lat, lon), nearest first.
+         */
+        public static Uri buildLocationNearUri(double lat, double lon, int k) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAR)
+                    .appendQueryParameter(PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LON, Double.toString(lon))
+                    .appendQueryParameter(PARAM_K, Integer.toString(k)).build();
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -126,6 +153,12 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters used to page through a location's forecast.  "after" is an exclusive
+        // date key (the date of the last row of the previous page) and "limit" caps the number
+        // of rows returned, so each page is a cheap index range scan instead of an OFFSET.
+        public static final String PARAM_AFTER = "after";
+        public static final String PARAM_LIMIT = "limit";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,6 +182,27 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /*
+            Builds the uri for the first page of a location's forecast, starting at startDate.
+         */
+        public static Uri buildWeatherLocationPage(
+                String locationSetting, long startDate, int limit) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /*
+            Builds the uri for the page of a location's forecast that follows the row dated
+            afterDate.  afterDate is expected to already be normalized, since it is read back
+            from the database.
+         */
+        public static Uri buildWeatherLocationPageAfter(
+                String locationSetting, long afterDate, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_AFTER, Long.toString(afterDate))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -164,5 +218,21 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
     }
 }
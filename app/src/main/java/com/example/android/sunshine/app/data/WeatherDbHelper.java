@@ -17,23 +17,38 @@ package com.example.android.sunshine.app.data;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
 
     // If you change the database schema, you must increment the database version.
     private static final int DATABASE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Where onUpgrade parks the old data while the tables are recreated.
+    private static final String UPGRADE_SNAPSHOT_NAME = "weather-upgrade.snapshot";
+
+    private final Context mContext;
+    private boolean mRestorePending;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
     }
 
     @Override
@@ -91,8 +106,65 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // It does NOT depend on the version number for your application.
         // If you want to update the schema without wiping data, commenting out the next 2 lines
         // should be your top priority before modifying this method.
+        // To spare the user an empty list until the next sync, we save what we can into a
+        // snapshot first and load it back once the new tables are open.
+        mRestorePending = saveUpgradeSnapshot(sqLiteDatabase);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // This runs after the upgrade transaction has committed, so a bad snapshot can only
+        // fail its own transaction, never the schema change.
+        if (mRestorePending && !db.isReadOnly()) {
+            mRestorePending = false;
+            restoreUpgradeSnapshot(db);
+        }
+    }
+
+    private boolean saveUpgradeSnapshot(SQLiteDatabase db) {
+        File snapshot = new File(mContext.getCacheDir(), UPGRADE_SNAPSHOT_NAME);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(snapshot);
+            WeatherSnapshot.write(db, out);
+            return true;
+        } catch (IOException | SQLiteException e) {
+            // The old schema may not have what we need; it's only a cache, so just start over.
+            Log.w(LOG_TAG, "Unable to save weather data across upgrade", e);
+            snapshot.delete();
+            return false;
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing upgrade snapshot", e);
+                }
+            }
+        }
+    }
+
+    private void restoreUpgradeSnapshot(SQLiteDatabase db) {
+        File snapshot = new File(mContext.getCacheDir(), UPGRADE_SNAPSHOT_NAME);
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(snapshot);
+            WeatherSnapshot.read(db, in);
+        } catch (IOException | SQLiteException e) {
+            Log.w(LOG_TAG, "Unable to restore weather data after upgrade", e);
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing upgrade snapshot", e);
+                }
+            }
+            snapshot.delete();
+        }
+    }
 }
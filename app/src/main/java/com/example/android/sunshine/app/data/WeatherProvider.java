@@ -23,17 +23,35 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 public class WeatherProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Upper bound on k for "near" queries.
+    private static final int MAX_NEAR_RESULTS = 100;
+
+    // Built on the first proximity query, dropped whenever the location table changes.
+    private volatile LocationIndex mLocationIndex;
+    private int mLocationGeneration;
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAR = 301;
+    static final int SNAPSHOT = 400;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -62,6 +80,12 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
+    //location.location_setting = ? AND date > ?
+    private static final String sLocationSettingAfterDateSelection =
+            WeatherContract.LocationEntry.TABLE_NAME+
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
     //location.location_setting = ? AND date = ?
     private static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
@@ -71,11 +95,16 @@ public class WeatherProvider extends ContentProvider {
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
 
         String[] selectionArgs;
         String selection;
 
-        if (startDate == 0) {
+        if (afterDate != 0) {
+            selectionArgs = new String[]{locationSetting, Long.toString(afterDate)};
+            selection = sLocationSettingAfterDateSelection;
+        } else if (startDate == 0) {
             selection = sLocationSettingSelection;
             selectionArgs = new String[]{locationSetting};
         } else {
@@ -83,13 +112,20 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
+        // Keyset paging only works if the rows come back in date order, so a paged query
+        // always sorts by date regardless of what the caller asked for.
+        if (limit > 0 || afterDate != 0) {
+            sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
                 selectionArgs,
                 null,
                 null,
-                sortOrder
+                sortOrder,
+                limit > 0 ? Integer.toString(limit) : null
         );
     }
 
@@ -130,6 +166,10 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.LocationEntry.PATH_NEAR, LOCATION_NEAR);
+
+        matcher.addURI(authority, WeatherContract.PATH_SNAPSHOT, SNAPSHOT);
         return matcher;
     }
 
@@ -164,6 +204,10 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_NEAR:
+                return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case SNAPSHOT:
+                return WeatherContract.SNAPSHOT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +257,11 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/near?lat=&lon=&k="
+            case LOCATION_NEAR: {
+                retCursor = getLocationsNear(uri, projection);
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -246,6 +295,7 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                invalidateLocationIndex();
                 break;
             }
             default:
@@ -270,6 +320,7 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) invalidateLocationIndex();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -281,6 +332,96 @@ public class WeatherProvider extends ContentProvider {
         return rowsDeleted;
     }
 
+    /*
+        Answers a "near" query from the in-memory LocationIndex, then reads the matching rows
+        back with their distance attached, nearest first.
+     */
+    private Cursor getLocationsNear(Uri uri, String[] projection) {
+        String latString = uri.getQueryParameter(WeatherContract.LocationEntry.PARAM_LAT);
+        String lonString = uri.getQueryParameter(WeatherContract.LocationEntry.PARAM_LON);
+        String kString = uri.getQueryParameter(WeatherContract.LocationEntry.PARAM_K);
+        if (null == latString || null == lonString) {
+            throw new IllegalArgumentException("lat and lon are required: " + uri);
+        }
+        double lat = Double.parseDouble(latString);
+        double lon = Double.parseDouble(lonString);
+        int k = null == kString ? 1 : Integer.parseInt(kString);
+        k = Math.max(1, Math.min(k, MAX_NEAR_RESULTS));
+
+        long[] ids = new long[k];
+        double[] distances = new double[k];
+        int found = getLocationIndex().nearest(lat, lon, k, ids, distances);
+
+        // The ids and distances come from the index, not the caller, so they can be inlined.
+        StringBuilder inClause = new StringBuilder(WeatherContract.LocationEntry._ID).append(" IN (");
+        StringBuilder distance = new StringBuilder("CASE ").append(WeatherContract.LocationEntry._ID);
+        for (int i = 0; i < found; i++) {
+            if (i > 0) inClause.append(',');
+            inClause.append(ids[i]);
+            distance.append(" WHEN ").append(ids[i]).append(" THEN ").append(distances[i]);
+        }
+        inClause.append(')');
+        // CASE needs at least one WHEN; with no locations the IN clause matches nothing anyway.
+        distance.append(found > 0 ? " END" : " WHEN NULL THEN NULL END");
+
+        String[] columns;
+        if (null == projection) {
+            columns = new String[] { "*",
+                    distance + " AS " + WeatherContract.LocationEntry.COLUMN_DISTANCE };
+        } else {
+            columns = new String[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                columns[i] = WeatherContract.LocationEntry.COLUMN_DISTANCE.equals(projection[i])
+                        ? distance + " AS " + WeatherContract.LocationEntry.COLUMN_DISTANCE
+                        : projection[i];
+            }
+        }
+        return mOpenHelper.getReadableDatabase().query(WeatherContract.LocationEntry.TABLE_NAME,
+                columns, inClause.toString(), null, null, null, distance + " ASC");
+    }
+
+    private LocationIndex getLocationIndex() {
+        LocationIndex index = mLocationIndex;
+        if (null != index) return index;
+
+        int generation;
+        synchronized (this) {
+            generation = mLocationGeneration;
+        }
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[] { WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                        WeatherContract.LocationEntry.COLUMN_COORD_LONG },
+                null, null, null, null, null);
+        try {
+            int count = cursor.getCount();
+            long[] ids = new long[count];
+            double[] latitudes = new double[count];
+            double[] longitudes = new double[count];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                latitudes[i] = cursor.getDouble(1);
+                longitudes[i] = cursor.getDouble(2);
+            }
+            index = new LocationIndex(ids, latitudes, longitudes, count);
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            // Only keep it if no location changed while we were reading.
+            if (generation == mLocationGeneration) mLocationIndex = index;
+        }
+        return index;
+    }
+
+    private void invalidateLocationIndex() {
+        synchronized (this) {
+            mLocationGeneration++;
+            mLocationIndex = null;
+        }
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -305,6 +446,7 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) invalidateLocationIndex();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -342,6 +484,80 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /*
+        Exports or imports a WeatherSnapshot through a pipe.  The caller gets one end of the pipe
+        and a background thread services the other, so the data set is never held in memory.
+        An import runs in a single transaction and notifies observers of both tables when done.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != SNAPSHOT) {
+            throw new FileNotFoundException("Unknown uri: " + uri);
+        }
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Unable to open pipe for " + uri + ": " + e);
+        }
+
+        if ("r".equals(mode)) {
+            final ParcelFileDescriptor writeSide = pipe[1];
+            new Thread("WeatherSnapshotExport") {
+                @Override
+                public void run() {
+                    OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(writeSide);
+                    try {
+                        WeatherSnapshot.write(mOpenHelper.getReadableDatabase(), out);
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Error exporting weather snapshot", e);
+                    } finally {
+                        closeQuietly(out);
+                    }
+                }
+            }.start();
+            return pipe[0];
+        } else if (mode.startsWith("w")) {
+            final ParcelFileDescriptor readSide = pipe[0];
+            new Thread("WeatherSnapshotImport") {
+                @Override
+                public void run() {
+                    InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(readSide);
+                    try {
+                        WeatherSnapshot.read(mOpenHelper.getWritableDatabase(), in);
+                        invalidateLocationIndex();
+                        // The mapped current conditions no longer match; readers rebuild it.
+                        CurrentConditionsFile.delete(getContext());
+                        getContext().getContentResolver().notifyChange(
+                                WeatherContract.LocationEntry.CONTENT_URI, null);
+                        getContext().getContentResolver().notifyChange(
+                                WeatherContract.WeatherEntry.CONTENT_URI, null);
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Error importing weather snapshot", e);
+                    } finally {
+                        closeQuietly(in);
+                    }
+                }
+            }.start();
+            return pipe[1];
+        }
+        try {
+            pipe[0].close();
+            pipe[1].close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error closing snapshot pipe", e);
+        }
+        throw new FileNotFoundException("Unsupported mode " + mode + " for " + uri);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error closing snapshot stream", e);
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
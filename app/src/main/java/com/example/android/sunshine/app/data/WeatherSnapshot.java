@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Streams the whole weather database to and from a compact, versioned binary format.
+ *
+ * The format is a header followed by a sequence of tagged records:
+ * <pre>
+ *   int   MAGIC
+ *   short VERSION
+ *   'L' location:  long _id, UTF location_setting, UTF city_name, double lat, double long
+ *   'W' weather:   long location_id, long date, int weather_id, desc, double min, double max,
+ *                  double humidity, double pressure, double wind, double degrees
+ *   'E' end:       int location count, int weather count
+ * </pre>
+ * Short descriptions repeat a lot ("Clear", "Rain", ...), so they are dictionary encoded: each
+ * is written as a varint index into a table built up as the stream goes, followed by the UTF
+ * string only the first time that index appears.
+ *
+ * Rows are written straight from a cursor and read straight into compiled insert statements,
+ * so neither direction holds more than one row in memory.
+ */
+public class WeatherSnapshot {
+    private static final String LOG_TAG = WeatherSnapshot.class.getSimpleName();
+
+    static final int MAGIC = 0x53554e53; // "SUNS"
+    static final short VERSION = 1;
+
+    private static final byte TAG_LOCATION = 'L';
+    private static final byte TAG_WEATHER = 'W';
+    private static final byte TAG_END = 'E';
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    /**
+     * Writes every location and weather row in db to out.  The stream is flushed but not closed.
+     *
+     * @return the number of bytes written
+     */
+    public static long write(SQLiteDatabase db, OutputStream out) throws IOException {
+        final long start = SystemClock.elapsedRealtime();
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+
+        int locationCount = 0;
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, LOCATION_COLUMNS,
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                data.writeByte(TAG_LOCATION);
+                data.writeLong(cursor.getLong(0));
+                data.writeUTF(cursor.getString(1));
+                data.writeUTF(cursor.getString(2));
+                data.writeDouble(cursor.getDouble(3));
+                data.writeDouble(cursor.getDouble(4));
+                locationCount++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int weatherCount = 0;
+        HashMap<String, Integer> descriptions = new HashMap<String, Integer>();
+        cursor = db.query(WeatherEntry.TABLE_NAME, WEATHER_COLUMNS,
+                null, null, null, null, WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE);
+        try {
+            while (cursor.moveToNext()) {
+                data.writeByte(TAG_WEATHER);
+                data.writeLong(cursor.getLong(0));
+                data.writeLong(cursor.getLong(1));
+                data.writeInt(cursor.getInt(2));
+                String description = cursor.getString(3);
+                Integer index = descriptions.get(description);
+                if (null == index) {
+                    writeVarint(data, descriptions.size());
+                    data.writeUTF(description);
+                    descriptions.put(description, descriptions.size());
+                } else {
+                    writeVarint(data, index);
+                }
+                for (int column = 4; column < WEATHER_COLUMNS.length; column++) {
+                    data.writeDouble(cursor.getDouble(column));
+                }
+                weatherCount++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        data.writeByte(TAG_END);
+        data.writeInt(locationCount);
+        data.writeInt(weatherCount);
+        data.flush();
+
+        long bytes = data.size();
+        logThroughput("Exported", locationCount, weatherCount, bytes,
+                SystemClock.elapsedRealtime() - start);
+        return bytes;
+    }
+
+    /**
+     * Replaces the contents of db with the snapshot read from in, in a single transaction.  If
+     * the snapshot is malformed nothing is changed.  The stream is not closed.
+     *
+     * @return the number of weather rows imported
+     */
+    public static int read(SQLiteDatabase db, InputStream in) throws IOException {
+        final long start = SystemClock.elapsedRealtime();
+        CountingInputStream counter =
+                new CountingInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        DataInputStream data = new DataInputStream(counter);
+
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a weather snapshot");
+        }
+        short version = data.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported weather snapshot version " + version);
+        }
+
+        SQLiteStatement insertLocation = db.compileStatement("INSERT OR REPLACE INTO " +
+                LocationEntry.TABLE_NAME + " (" + join(LOCATION_COLUMNS) + ") VALUES (?,?,?,?,?)");
+        SQLiteStatement insertWeather = db.compileStatement("INSERT INTO " +
+                WeatherEntry.TABLE_NAME + " (" + join(WEATHER_COLUMNS) +
+                ") VALUES (?,?,?,?,?,?,?,?,?,?)");
+
+        int locationCount = 0;
+        int weatherCount = 0;
+        ArrayList<String> descriptions = new ArrayList<String>();
+        db.beginTransaction();
+        try {
+            db.delete(WeatherEntry.TABLE_NAME, null, null);
+            db.delete(LocationEntry.TABLE_NAME, null, null);
+
+            boolean done = false;
+            while (!done) {
+                byte tag = data.readByte();
+                switch (tag) {
+                    case TAG_LOCATION:
+                        insertLocation.clearBindings();
+                        insertLocation.bindLong(1, data.readLong());
+                        insertLocation.bindString(2, data.readUTF());
+                        insertLocation.bindString(3, data.readUTF());
+                        insertLocation.bindDouble(4, data.readDouble());
+                        insertLocation.bindDouble(5, data.readDouble());
+                        insertLocation.executeInsert();
+                        locationCount++;
+                        break;
+                    case TAG_WEATHER:
+                        insertWeather.clearBindings();
+                        insertWeather.bindLong(1, data.readLong());
+                        insertWeather.bindLong(2, data.readLong());
+                        insertWeather.bindLong(3, data.readInt());
+                        int index = readVarint(data);
+                        if (index == descriptions.size()) {
+                            descriptions.add(data.readUTF());
+                        } else if (index > descriptions.size()) {
+                            throw new IOException("Corrupt description index " + index);
+                        }
+                        insertWeather.bindString(4, descriptions.get(index));
+                        for (int column = 4; column < WEATHER_COLUMNS.length; column++) {
+                            insertWeather.bindDouble(column + 1, data.readDouble());
+                        }
+                        insertWeather.executeInsert();
+                        weatherCount++;
+                        break;
+                    case TAG_END:
+                        if (data.readInt() != locationCount || data.readInt() != weatherCount) {
+                            throw new IOException("Truncated weather snapshot");
+                        }
+                        done = true;
+                        break;
+                    default:
+                        throw new IOException("Unknown snapshot record " + tag);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertLocation.close();
+            insertWeather.close();
+        }
+
+        logThroughput("Imported", locationCount, weatherCount, counter.getCount(),
+                SystemClock.elapsedRealtime() - start);
+        return weatherCount;
+    }
+
+    private static void logThroughput(String verb, int locations, int rows, long bytes,
+                                      long elapsedMs) {
+        double megabytes = bytes / (1024.0 * 1024.0);
+        double mbPerSecond = elapsedMs > 0 ? megabytes * 1000.0 / elapsedMs : 0;
+        Log.d(LOG_TAG, verb + " " + locations + " locations and " + rows + " forecasts, " +
+                bytes + " bytes in " + elapsedMs + "ms (" +
+                String.format(Locale.US, "%.2f", mbPerSecond) + " MB/s)");
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String join(String[] columns) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(columns[i]);
+        }
+        return sb.toString();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) mCount++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) mCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
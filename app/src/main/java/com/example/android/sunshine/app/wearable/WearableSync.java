@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.ForecastPayload;
+import com.example.android.sunshine.app.RefreshGate;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the forecast to the wearable, as a {@link ForecastPayload}, over one Google API
+ * connection, which is kept open while there is something to send and for a while after.
+ *
+ * Sends are queued on a background thread, and each caller waits until its forecast has gone
+ * out, so that a caller that is a started service keeps the process alive until then.  Requests
+ * that arrive while one is waiting replace it, so the wearable only ever gets the latest
+ * forecast.  A data item is only marked urgent, and so only wakes the radio at once, when the
+ * payload differs from the one last sent or the watch asked for it.  After a sync that changed
+ * nothing the same payload still goes out, not urgent, with a new time stamp, so that the watch
+ * knows its copy is current and doesn't ask for it again.
+ */
+public class WearableSync {
+    private static final String TAG = "WearableSync";
+
+    private static final String REQ_PATH = "/weather";
+    private static final String KEY_FORECAST = "forecast";
+    private static final String KEY_SENT_AT = "sent_at";
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    private static final long PUT_TIMEOUT_SECONDS = 30;
+    // How long the connection stays open once the queue is empty
+    private static final long IDLE_DISCONNECT_MILLIS = 60 * 1000;
+
+    private static WearableSync sInstance;
+
+    private final Context mContext;
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler;
+
+    // The payload waiting to be sent, guarded by this
+    private byte[] mPendingPayload;
+    private boolean mPendingOnlyIfChanged;
+    // Numbers the requests, so that each caller can wait for the flush that handles its own
+    private long mLastQueued;
+    private long mLastHandled;
+
+    // Statistics, guarded by this
+    private int mRequests;
+    private int mCoalesced;
+    private int mConnects;
+    private long mConnectMillis;
+    private int mSent;
+    private int mSentUrgent;
+    // Unchanged forecasts put again only for the new stamp; also counted in mSent
+    private int mStamped;
+    private int mFailed;
+    private long mSentBytes;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable mDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            if (mGoogleApiClient.isConnected()) {
+                mGoogleApiClient.disconnect();
+            }
+        }
+    };
+
+    private WearableSync(Context context) {
+        mContext = context.getApplicationContext();
+        mGoogleApiClient = new GoogleApiClient.Builder(mContext)
+                .addApi(Wearable.API)
+                .build();
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized WearableSync getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WearableSync(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues a forecast for the wearable and blocks until it has been sent, found unchanged or
+     * failed, or replaced by a later forecast that has.  Call it off the main thread.
+     *
+     * @param payload       built with a {@link ForecastPayload.Writer}
+     * @param onlyIfChanged true to drop the payload if the wearable already has it, as after a
+     *                      sync; false to send it regardless, as when the watch asks
+     */
+    public synchronized void send(byte[] payload, boolean onlyIfChanged) {
+        mRequests++;
+        if (null != mPendingPayload) {
+            mCoalesced++;
+            // Whoever asked to have them sent regardless still gets them
+            mPendingOnlyIfChanged &= onlyIfChanged;
+        } else {
+            mPendingOnlyIfChanged = onlyIfChanged;
+        }
+        mPendingPayload = payload;
+        long request = ++mLastQueued;
+        mHandler.removeCallbacks(mFlush);
+        mHandler.post(mFlush);
+        while (mLastHandled < request) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void flush() {
+        byte[] payload;
+        boolean onlyIfChanged;
+        long request;
+        synchronized (this) {
+            if (null == mPendingPayload) return;
+            payload = mPendingPayload;
+            mPendingPayload = null;
+            onlyIfChanged = mPendingOnlyIfChanged;
+            request = mLastQueued;
+        }
+        try {
+            flush(payload, onlyIfChanged);
+        } finally {
+            synchronized (this) {
+                mLastHandled = request;
+                notifyAll();
+            }
+        }
+    }
+
+    private void flush(byte[] payload, boolean onlyIfChanged) {
+        long hash = new RefreshGate.Hasher().add(payload).get();
+        // Not RefreshGate.shouldSkip: the put still happens, so nothing is skipped
+        boolean unchanged = onlyIfChanged
+                && RefreshGate.isCurrent(mContext, RefreshGate.WEARABLE, hash);
+        // A new forecast goes out at once, and so does what the watch asked for, since it waits
+        // for it; an unchanged one only refreshes the stamp and can wait for the next batch
+        boolean urgent = !unchanged;
+
+        mHandler.removeCallbacks(mDisconnect);
+        if (connect()) {
+            // create and send a request to update the weather on wearable
+            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(REQ_PATH);
+            if (urgent) {
+                putDataMapRequest.setUrgent();
+            }
+
+            putDataMapRequest.getDataMap().putByteArray(KEY_FORECAST, payload);
+            // A data item that didn't change doesn't reach the watch, which would then think
+            // its forecast old and keep asking for what it already has
+            putDataMapRequest.getDataMap().putLong(KEY_SENT_AT, System.currentTimeMillis());
+
+            PutDataRequest request = putDataMapRequest.asPutDataRequest();
+            DataApi.DataItemResult dataItemResult =
+                    Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                            .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            synchronized (this) {
+                if (dataItemResult.getStatus().isSuccess()) {
+                    mSent++;
+                    mSentBytes += payload.length;
+                    if (urgent) mSentUrgent++;
+                    if (unchanged) {
+                        mStamped++;
+                    } else {
+                        RefreshGate.onRefreshed(mContext, RefreshGate.WEARABLE, hash);
+                    }
+                } else {
+                    mFailed++;
+                    Log.v(TAG, "Fails sending data");
+                }
+            }
+        }
+        mHandler.postDelayed(mDisconnect, IDLE_DISCONNECT_MILLIS);
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, getStats());
+        }
+    }
+
+    private boolean connect() {
+        if (mGoogleApiClient.isConnected()) {
+            return true;
+        }
+        long start = SystemClock.elapsedRealtime();
+        ConnectionResult connectionResult =
+                mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        synchronized (this) {
+            mConnects++;
+            mConnectMillis += SystemClock.elapsedRealtime() - start;
+            if (!connectionResult.isSuccess()) {
+                mFailed++;
+                Log.v(TAG, "Fails connecting: " + connectionResult);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized String getStats() {
+        return mRequests + " requests (" + mCoalesced + " coalesced), " + mSent + " sent ("
+                + mSentUrgent + " urgent, " + mStamped + " unchanged and only stamped, "
+                + mSentBytes + " payload bytes), " + mFailed + " failed, " + mConnects
+                + " connects taking " + mConnectMillis + "ms";
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        WearableSync sync;
+        synchronized (WearableSync.class) {
+            sync = sInstance;
+        }
+        writer.print(prefix);
+        writer.print("Wearable: ");
+        writer.println(null == sync ? "not used yet" : sync.getStats());
+    }
+}
@@ -12,16 +12,45 @@ import android.support.annotation.NonNull;
 import android.support.v4.app.TaskStackBuilder;
 import android.widget.RemoteViews;
 
+import com.example.android.sunshine.app.DataUpdateDispatcher;
 import com.example.android.sunshine.app.DetailActivity;
+import com.example.android.sunshine.app.Forecast;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
-import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.RefreshGate;
+import com.example.android.sunshine.app.SunshineSettings;
+import com.example.android.sunshine.app.Utility;
 
 /**
  * Provider for a scrollable weather detail widget
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetProvider extends AppWidgetProvider {
+    /**
+     * Has the widgets reload their lists when the preferred location's forecast changed,
+     * unless they already show it.
+     */
+    public static final DataUpdateDispatcher.Consumer DATA_UPDATE_CONSUMER =
+            new DataUpdateDispatcher.Consumer() {
+        @Override
+        public void onDataUpdated(Context context, DataUpdateDispatcher.DataUpdate update) {
+            // The widget, and notifyAppWidgetViewDataChanged, only exist from Honeycomb on
+            if (!update.changed(update.mLocation)
+                    || !context.getResources().getBoolean(R.bool.widget_detail_enabled)) {
+                return;
+            }
+            long hash = hashForecast(context, update.mForecast);
+            if (RefreshGate.shouldSkip(context, RefreshGate.DETAIL_WIDGET, hash)) {
+                return;
+            }
+            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                    new ComponentName(context, DetailWidgetProvider.class));
+            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+            RefreshGate.onRefreshed(context, RefreshGate.DETAIL_WIDGET, hash);
+        }
+    };
+
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
         // Perform this loop procedure for each App Widget that belongs to this provider
         for (int appWidgetId : appWidgetIds) {
@@ -54,15 +83,30 @@ public class DetailWidgetProvider extends AppWidgetProvider {
         }
     }
 
-    @Override
-    public void onReceive(@NonNull Context context, @NonNull Intent intent) {
-        super.onReceive(context, intent);
-        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
-                    new ComponentName(context, getClass()));
-            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+    /*
+        Covers everything a list row shows: the first day's label stands in for the date
+        labels, which only change with the day or the locale, and the settings for the units
+        and the art.
+     */
+    private static long hashForecast(Context context, Forecast forecast) {
+        SunshineSettings settings = SunshineSettings.get(context);
+        RefreshGate.Hasher hasher = new RefreshGate.Hasher()
+                .add(forecast.getLocationSetting())
+                .add(settings.isMetric())
+                .add(settings.usingLocalGraphics())
+                .add(settings.getArtPack())
+                .add(forecast.getCount());
+        if (forecast.getCount() > 0) {
+            hasher.add(Utility.getFriendlyDayString(context, forecast.getDate(0), false));
+        }
+        for (int i = 0; i < forecast.getCount(); i++) {
+            hasher.add(forecast.getDate(i))
+                    .add(forecast.getWeatherId(i))
+                    .add(forecast.getShortDesc(i))
+                    .add(forecast.getMaxTemp(i))
+                    .add(forecast.getMinTemp(i));
         }
+        return hasher.get();
     }
 
     /**
@@ -2,23 +2,25 @@ package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
 import android.content.Intent;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Parcel;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.ArtCache;
+import com.example.android.sunshine.app.Forecast;
+import com.example.android.sunshine.app.ForecastRepository;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherConditionCatalog;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
+import java.util.Arrays;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -26,26 +28,22 @@ import java.util.concurrent.ExecutionException;
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    static final int INDEX_WEATHER_ID = 0;
-    static final int INDEX_WEATHER_DATE = 1;
-    static final int INDEX_WEATHER_CONDITION_ID = 2;
-    static final int INDEX_WEATHER_DESC = 3;
-    static final int INDEX_WEATHER_MAX_TEMP = 4;
-    static final int INDEX_WEATHER_MIN_TEMP = 5;
+    // Log.isLoggable only takes tags of up to 23 characters
+    private static final String STATS_TAG = "SunshineDetailWidget";
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            private Forecast data = null;
+            // The art for each condition in data, at the widget's icon size, so that
+            // getViewAt never waits on a decode.  Null where the app's own icon is shown.
+            private final Bitmap[] icons = new Bitmap[WeatherConditionCatalog.KIND_COUNT];
+
+            // Bind statistics since the last data set change
+            private int boundRows;
+            private long totalBindNanos;
+            private long maxBindNanos;
+            private int maxParcelBytes;
 
             @Override
             public void onCreate() {
@@ -54,31 +52,65 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
+                // The forecast is shared with the app's list, so this only queries the provider
+                // when nothing has loaded it since the last change.
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                data = ForecastRepository.getInstance(DetailWidgetRemoteViewsService.this)
+                        .getForecast();
+                prefetchIcons();
                 Binder.restoreCallingIdentity(identityToken);
+                logBindStats();
+            }
+
+            /*
+                The host gives us as long as we need here, while it shows the loading views, so
+                this is where anything missing from the art cache is downloaded.  Rows that
+                share a condition share one bitmap, and every bitmap is scaled down to the icon
+                size, which keeps each row's RemoteViews small enough to send through Binder
+                quickly.
+             */
+            private void prefetchIcons() {
+                Arrays.fill(icons, null);
+                if (null == data
+                        || Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    return;
+                }
+                ArtCache artCache = ArtCache.getInstance(DetailWidgetRemoteViewsService.this);
+                boolean[] fetched = new boolean[WeatherConditionCatalog.KIND_COUNT];
+                for (int i = 0; i < data.getCount(); i++) {
+                    int weatherId = data.getWeatherId(i);
+                    int kind = WeatherConditionCatalog.getKind(weatherId);
+                    if (kind == WeatherConditionCatalog.KIND_UNKNOWN || fetched[kind]) {
+                        continue;
+                    }
+                    fetched[kind] = true;
+                    icons[kind] = artCache.get(Utility.getArtUrlForWeatherCondition(
+                            DetailWidgetRemoteViewsService.this, weatherId), ArtCache.SIZE_ICON);
+                }
+            }
+
+            private void logBindStats() {
+                if (boundRows > 0 && Log.isLoggable(STATS_TAG, Log.DEBUG)) {
+                    Log.d(STATS_TAG, "Bound " + boundRows + " rows, "
+                            + totalBindNanos / boundRows / 1000 + "us average, "
+                            + maxBindNanos / 1000 + "us worst, largest parcel "
+                            + maxParcelBytes + " bytes");
+                }
+                boundRows = 0;
+                totalBindNanos = 0;
+                maxBindNanos = 0;
+                maxParcelBytes = 0;
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                logBindStats();
+                data = null;
+                Arrays.fill(icons, null);
             }
 
             @Override
@@ -89,33 +121,23 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
             @Override
             public RemoteViews getViewAt(int position) {
                 if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                        data == null || position >= data.getCount()) {
                     return null;
                 }
+                long start = System.nanoTime();
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                int weatherId = data.getWeatherId(position);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                int kind = WeatherConditionCatalog.getKind(weatherId);
+                Bitmap weatherArtImage = kind == WeatherConditionCatalog.KIND_UNKNOWN
+                        ? null : icons[kind];
+                String description = data.getShortDesc(position);
+                long dateInMillis = data.getDate(position);
                 String formattedDate = Utility.getFriendlyDayString(
                         DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+                double maxTemp = data.getMaxTemp(position);
+                double minTemp = data.getMinTemp(position);
                 String formattedMaxTemperature =
                         Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
                 String formattedMinTemperature =
@@ -134,13 +156,24 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                String locationSetting = data.getLocationSetting();
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
                         locationSetting,
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+
+                long bindNanos = System.nanoTime() - start;
+                boundRows++;
+                totalBindNanos += bindNanos;
+                maxBindNanos = Math.max(maxBindNanos, bindNanos);
+                if (Log.isLoggable(STATS_TAG, Log.DEBUG)) {
+                    // Only measured when someone is looking, since it copies the whole row
+                    Parcel parcel = Parcel.obtain();
+                    views.writeToParcel(parcel, 0);
+                    maxParcelBytes = Math.max(maxParcelBytes, parcel.dataSize());
+                    parcel.recycle();
+                }
                 return views;
             }
 
@@ -161,8 +194,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                if (data != null && position < data.getCount())
+                    return data.getId(position);
                 return position;
             }
 
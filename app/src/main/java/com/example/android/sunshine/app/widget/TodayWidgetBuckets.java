@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.TypedValue;
+
+import com.example.android.sunshine.app.R;
+
+/**
+ * Which layout each Today widget uses, decided from its width when the host reports a resize
+ * and remembered, so that an update only has to look it up.
+ */
+final class TodayWidgetBuckets {
+    static final int BUCKET_SMALL = 0;
+    static final int BUCKET_DEFAULT = 1;
+    static final int BUCKET_LARGE = 2;
+    static final int BUCKET_COUNT = 3;
+
+    static final int[] LAYOUTS = {
+            R.layout.widget_today_small,
+            R.layout.widget_today,
+            R.layout.widget_today_large
+    };
+
+    private static final String PREFS_NAME = "today_widget_buckets";
+
+    private TodayWidgetBuckets() {
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Records the bucket for the widget's new size.
+     *
+     * @return true if the widget moved to another bucket, and so needs a new layout
+     */
+    static boolean onOptionsChanged(Context context, int appWidgetId, Bundle options) {
+        int bucket = getBucketForOptions(context, options);
+        SharedPreferences preferences = getPreferences(context);
+        String key = Integer.toString(appWidgetId);
+        if (preferences.getInt(key, -1) == bucket) {
+            return false;
+        }
+        preferences.edit().putInt(key, bucket).apply();
+        return true;
+    }
+
+    static void onDeleted(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(Integer.toString(appWidgetId));
+        }
+        editor.apply();
+    }
+
+    /**
+     * Sorts widgets by bucket.
+     *
+     * @return the widget ids of each bucket, indexed by bucket
+     */
+    static int[][] group(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        SharedPreferences preferences = getPreferences(context);
+        int[] buckets = new int[appWidgetIds.length];
+        int[] counts = new int[BUCKET_COUNT];
+        SharedPreferences.Editor editor = null;
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            String key = Integer.toString(appWidgetIds[i]);
+            int bucket = preferences.getInt(key, -1);
+            if (bucket < 0) {
+                // Placed before we kept track, or the host never reported a size
+                bucket = getBucketForWidget(context, appWidgetManager, appWidgetIds[i]);
+                if (null == editor) editor = preferences.edit();
+                editor.putInt(key, bucket);
+            }
+            buckets[i] = bucket;
+            counts[bucket]++;
+        }
+        if (null != editor) {
+            editor.apply();
+        }
+
+        int[][] grouped = new int[BUCKET_COUNT][];
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            grouped[bucket] = new int[counts[bucket]];
+            counts[bucket] = 0;
+        }
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            grouped[buckets[i]][counts[buckets[i]]++] = appWidgetIds[i];
+        }
+        return grouped;
+    }
+
+    private static int getBucketForWidget(Context context, AppWidgetManager appWidgetManager,
+                                          int appWidgetId) {
+        // Prior to Jelly Bean, widgets were always their default size
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return BUCKET_DEFAULT;
+        }
+        // For Jelly Bean and higher devices, widgets can be resized - the current size can be
+        // retrieved from the newly added App Widget Options
+        return getBucketForOptions(context, getOptions(appWidgetManager, appWidgetId));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Bundle getOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
+        return appWidgetManager.getAppWidgetOptions(appWidgetId);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static int getBucketForOptions(Context context, Bundle options) {
+        if (null == options || !options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
+            return BUCKET_DEFAULT;
+        }
+        Resources resources = context.getResources();
+        int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+        // The width is in dp, but we'll convert it to pixels to match the dimensions
+        int widgetWidth = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
+                resources.getDisplayMetrics());
+        if (widgetWidth >= resources.getDimensionPixelSize(R.dimen.widget_today_large_width)) {
+            return BUCKET_LARGE;
+        } else if (widgetWidth >=
+                resources.getDimensionPixelSize(R.dimen.widget_today_default_width)) {
+            return BUCKET_DEFAULT;
+        }
+        return BUCKET_SMALL;
+    }
+}
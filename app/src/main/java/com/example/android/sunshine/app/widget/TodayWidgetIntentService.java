@@ -20,35 +20,37 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
-import android.os.Bundle;
-import android.util.DisplayMetrics;
-import android.util.TypedValue;
 import android.widget.RemoteViews;
 
+import com.example.android.sunshine.app.DataUpdateDispatcher;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.RefreshGate;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.CurrentConditionsFile;
 
 /**
- * IntentService which handles updating all Today widgets with the latest data
+ * IntentService which handles updating all Today widgets with the latest data.  After a sync
+ * the widgets are updated by {@link #DATA_UPDATE_CONSUMER} instead, on the
+ * {@link DataUpdateDispatcher}'s thread.
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    /**
+     * Updates the widgets when today's values changed, unless they already show them.
+     */
+    public static final DataUpdateDispatcher.Consumer DATA_UPDATE_CONSUMER =
+            new DataUpdateDispatcher.Consumer() {
+        @Override
+        public void onDataUpdated(Context context, DataUpdateDispatcher.DataUpdate update) {
+            if (update.todayChanged()) {
+                updateWidgets(context, update.mLocation, update.mConditions, update.mRecord,
+                        update.mToday, true);
+            }
+        }
     };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -56,50 +58,62 @@ public class TodayWidgetIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        // Retrieve all of the Today widget ids: these are the widgets we need to update
-        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
-        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
-                TodayWidgetProvider.class));
-
-        // Get today's data from the ContentProvider
+        // Get today's data from the mapped current conditions file
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
+        CurrentConditionsFile conditions = CurrentConditionsFile.openForLocation(this, location);
+        if (conditions == null) {
             return;
         }
-        if (!data.moveToFirst()) {
-            data.close();
+        int record = conditions.findLocation(location);
+        int day = record < 0 ? -1 : conditions.findDay(record, System.currentTimeMillis());
+        if (day < 0) {
             return;
         }
+        // A widget being placed or resized always gets its views
+        updateWidgets(this, location, conditions, record, day, false);
+    }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
+    private static void updateWidgets(Context context, String location,
+                                      CurrentConditionsFile conditions, int record, int day,
+                                      boolean skipIfUnchanged) {
+        // Retrieve all of the Today widget ids: these are the widgets we need to update
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(context,
+                TodayWidgetProvider.class));
+
+        int weatherId = conditions.getWeatherId(record, day);
         int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
+        String description = conditions.getShortDesc(record, day);
+        double maxTemp = conditions.getMaxTemp(record, day);
+        double minTemp = conditions.getMinTemp(record, day);
+        String formattedMaxTemperature = Utility.formatTemperature(context, maxTemp);
+        String formattedMinTemperature = Utility.formatTemperature(context, minTemp);
+
+        // A sync that didn't change anything shown here leaves the widgets alone
+        long hash = new RefreshGate.Hasher()
+                .add(location)
+                .add(weatherId)
+                .add(description)
+                .add(formattedMaxTemperature)
+                .add(formattedMinTemperature)
+                .get();
+        if (skipIfUnchanged && RefreshGate.shouldSkip(context, RefreshGate.TODAY_WIDGET, hash)) {
+            return;
+        }
+
+        // Every widget launches MainActivity when tapped
+        Intent launchIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, launchIntent, 0);
 
-        // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
+        // Widgets of the same size show exactly the same thing, so each layout is built once
+        // and sent to all of its widgets in one call
+        int[][] buckets = TodayWidgetBuckets.group(context, appWidgetManager, appWidgetIds);
+        for (int bucket = 0; bucket < TodayWidgetBuckets.BUCKET_COUNT; bucket++) {
+            if (buckets[bucket].length == 0) {
+                continue;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            RemoteViews views = new RemoteViews(context.getPackageName(),
+                    TodayWidgetBuckets.LAYOUTS[bucket]);
 
             // Add the data to the RemoteViews
             views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
@@ -110,42 +124,16 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_description, description);
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
-        }
-    }
-
-    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
-        // Prior to Jelly Bean, widgets were always their default size
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
-            return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-        }
-        // For Jelly Bean and higher devices, widgets can be resized - the current size can be
-        // retrieved from the newly added App Widget Options
-        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
-    }
-
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
-        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
-        if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
-            int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
-            // The width returned is in dp, but we'll convert it to pixels to match the other widths
-            DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
-            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
-                    displayMetrics);
+            // Tell the AppWidgetManager to perform an update on this bucket's widgets
+            appWidgetManager.updateAppWidget(buckets[bucket], views);
         }
-        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        RefreshGate.onRefreshed(context, RefreshGate.TODAY_WIDGET, hash);
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
-    private void setRemoteContentDescription(RemoteViews views, String description) {
+    private static void setRemoteContentDescription(RemoteViews views, String description) {
         views.setContentDescription(R.id.widget_icon, description);
     }
 }
@@ -20,15 +20,13 @@ import android.appwidget.AppWidgetProvider;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
-import android.support.annotation.NonNull;
-
-import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
  * Provider for a horizontally expandable widget showing today's weather.
  *
  * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * data retrieval is done on a background thread.  New data is pushed to the widgets through
+ * the {@link com.example.android.sunshine.app.DataUpdateDispatcher}.
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
@@ -40,14 +38,14 @@ public class TodayWidgetProvider extends AppWidgetProvider {
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // Resizing within a layout's range changes nothing we show
+        if (TodayWidgetBuckets.onOptionsChanged(context, appWidgetId, newOptions)) {
+            context.startService(new Intent(context, TodayWidgetIntentService.class));
+        }
     }
 
     @Override
-    public void onReceive(@NonNull Context context, @NonNull Intent intent) {
-        super.onReceive(context, intent);
-        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
-        }
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        TodayWidgetBuckets.onDeleted(context, appWidgetIds);
     }
 }
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * The next few days of weather as the phone sends them to the watch, in one small byte array,
+ * compiled into both the app and the watch face so the two can't drift apart.
+ *
+ * The phone builds a payload with a {@link Writer}.  The watch keeps one instance and
+ * {@link #decode}s every payload it receives into it; decoding fills preallocated arrays and
+ * doesn't allocate, except for a location string the instance hasn't seen before.  Because the
+ * watch holds several days, it can pick "today" itself with {@link #findDay} and stays correct
+ * across midnight without asking the phone again.
+ *
+ * Days are identified by Julian day number, as returned by
+ * {@code android.text.format.Time.getJulianDay}, so that both sides agree on a day regardless of
+ * the time of day a date was normalized to.  Temperatures are in the units the phone stores,
+ * rounded to tenths of a degree.
+ *
+ * Layout, multi-byte values big-endian, varints unsigned LEB128:
+ * <pre>
+ *   byte   VERSION
+ *   byte   location count
+ *   location * location count          the dictionary days refer to
+ *     byte   length
+ *     bytes  location, UTF-8
+ *   byte   day count
+ *   day * day count                    in ascending date order
+ *     varint date                      the first day's Julian day, then days since the previous
+ *     byte   location index
+ *     short  weather id
+ *     short  max temperature * 10
+ *     short  min temperature * 10
+ * </pre>
+ */
+public final class ForecastPayload {
+
+    public static final byte VERSION = 1;
+
+    public static final int MAX_DAYS = 16;
+    public static final int MAX_LOCATIONS = 4;
+    public static final int MAX_LOCATION_BYTES = 64;
+
+    /** The largest payload a {@link Writer} produces. */
+    public static final int MAX_SIZE = 3 + MAX_LOCATIONS * (1 + MAX_LOCATION_BYTES)
+            + MAX_DAYS * (5 + 1 + 2 + 2 + 2);
+
+    private static final double TEMPERATURE_SCALE = 10.0;
+
+    // The decoded days
+    private int mDayCount;
+    private final int[] mJulianDays = new int[MAX_DAYS];
+    private final byte[] mLocationIndexes = new byte[MAX_DAYS];
+    private final short[] mWeatherIds = new short[MAX_DAYS];
+    private final short[] mMaxTemps = new short[MAX_DAYS];
+    private final short[] mMinTemps = new short[MAX_DAYS];
+
+    // The decoded location dictionary.  Strings are only made when asked for, and kept for as
+    // long as later payloads carry the same bytes.
+    private int mLocationCount;
+    private final byte[][] mLocationBytes = new byte[MAX_LOCATIONS][MAX_LOCATION_BYTES];
+    private final int[] mLocationLengths = new int[MAX_LOCATIONS];
+    private final String[] mLocations = new String[MAX_LOCATIONS];
+
+    // Read position in the payload being decoded
+    private int mReadPosition;
+
+    /**
+     * Builds a payload on the phone.  Days must be added in ascending date order.
+     */
+    public static final class Writer {
+        private final byte[] mBuffer = new byte[MAX_SIZE];
+        private final String[] mLocations = new String[MAX_LOCATIONS];
+        private final byte[][] mLocationBytes = new byte[MAX_LOCATIONS][];
+        private int mLocationCount;
+        private int mDayCount;
+        private final int[] mJulianDays = new int[MAX_DAYS];
+        private final byte[] mLocationIndexes = new byte[MAX_DAYS];
+        private final short[] mWeatherIds = new short[MAX_DAYS];
+        private final short[] mMaxTemps = new short[MAX_DAYS];
+        private final short[] mMinTemps = new short[MAX_DAYS];
+
+        /**
+         * @return this, or throws IllegalArgumentException if the day doesn't fit the format
+         */
+        public Writer addDay(int julianDay, String location, int weatherId, double maxTemp,
+                             double minTemp) {
+            if (mDayCount == MAX_DAYS) {
+                throw new IllegalArgumentException("More than " + MAX_DAYS + " days");
+            }
+            if (julianDay < 0 || (mDayCount > 0 && julianDay <= mJulianDays[mDayCount - 1])) {
+                throw new IllegalArgumentException("Day " + julianDay + " is out of order");
+            }
+            if (weatherId < 0 || weatherId > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Weather id " + weatherId + " out of range");
+            }
+            mJulianDays[mDayCount] = julianDay;
+            mLocationIndexes[mDayCount] = (byte) indexLocation(location);
+            mWeatherIds[mDayCount] = (short) weatherId;
+            mMaxTemps[mDayCount] = encodeTemperature(maxTemp);
+            mMinTemps[mDayCount] = encodeTemperature(minTemp);
+            mDayCount++;
+            return this;
+        }
+
+        private int indexLocation(String location) {
+            for (int i = 0; i < mLocationCount; i++) {
+                if (mLocations[i].equals(location)) return i;
+            }
+            if (mLocationCount == MAX_LOCATIONS) {
+                throw new IllegalArgumentException("More than " + MAX_LOCATIONS + " locations");
+            }
+            byte[] bytes = encodeLocation(location);
+            if (bytes.length > MAX_LOCATION_BYTES) {
+                // Cut at a character boundary, so the watch still gets valid UTF-8
+                int length = MAX_LOCATION_BYTES;
+                while ((bytes[length] & 0xc0) == 0x80) length--;
+                bytes = Arrays.copyOf(bytes, length);
+            }
+            mLocations[mLocationCount] = location;
+            mLocationBytes[mLocationCount] = bytes;
+            return mLocationCount++;
+        }
+
+        public byte[] toByteArray() {
+            int position = 0;
+            mBuffer[position++] = VERSION;
+            mBuffer[position++] = (byte) mLocationCount;
+            for (int i = 0; i < mLocationCount; i++) {
+                byte[] bytes = mLocationBytes[i];
+                mBuffer[position++] = (byte) bytes.length;
+                System.arraycopy(bytes, 0, mBuffer, position, bytes.length);
+                position += bytes.length;
+            }
+            mBuffer[position++] = (byte) mDayCount;
+            int previousDay = 0;
+            for (int day = 0; day < mDayCount; day++) {
+                position = writeVarint(mBuffer, position, mJulianDays[day] - previousDay);
+                previousDay = mJulianDays[day];
+                mBuffer[position++] = mLocationIndexes[day];
+                position = writeShort(mBuffer, position, mWeatherIds[day]);
+                position = writeShort(mBuffer, position, mMaxTemps[day]);
+                position = writeShort(mBuffer, position, mMinTemps[day]);
+            }
+            return Arrays.copyOf(mBuffer, position);
+        }
+    }
+
+    /**
+     * Replaces this instance's days with the payload's.
+     *
+     * @return false if the payload is from another version or is malformed, in which case this
+     * instance keeps the days it had
+     */
+    public boolean decode(byte[] payload) {
+        // Checked in full first, so that a bad payload can't wipe out a good forecast
+        if (!isWellFormed(payload)) {
+            return false;
+        }
+        mReadPosition = 1;
+        int locationCount = payload[mReadPosition++] & 0xff;
+        for (int i = 0; i < locationCount; i++) {
+            int length = payload[mReadPosition++] & 0xff;
+            readLocation(i, payload, mReadPosition, length);
+            mReadPosition += length;
+        }
+        mLocationCount = locationCount;
+
+        int dayCount = payload[mReadPosition++] & 0xff;
+        int julianDay = 0;
+        for (int day = 0; day < dayCount; day++) {
+            julianDay += readVarint(payload);
+            mJulianDays[day] = julianDay;
+            mLocationIndexes[day] = payload[mReadPosition++];
+            mWeatherIds[day] = readShort(payload, mReadPosition);
+            mMaxTemps[day] = readShort(payload, mReadPosition + 2);
+            mMinTemps[day] = readShort(payload, mReadPosition + 4);
+            mReadPosition += 6;
+        }
+        mDayCount = dayCount;
+        return true;
+    }
+
+    private boolean isWellFormed(byte[] payload) {
+        if (null == payload || payload.length < 3 || payload[0] != VERSION) {
+            return false;
+        }
+        mReadPosition = 1;
+
+        int locationCount = payload[mReadPosition++] & 0xff;
+        if (locationCount > MAX_LOCATIONS) return false;
+        for (int i = 0; i < locationCount; i++) {
+            if (mReadPosition >= payload.length) return false;
+            int length = payload[mReadPosition++] & 0xff;
+            if (length > MAX_LOCATION_BYTES || mReadPosition + length > payload.length) {
+                return false;
+            }
+            mReadPosition += length;
+        }
+
+        if (mReadPosition >= payload.length) return false;
+        int dayCount = payload[mReadPosition++] & 0xff;
+        if (dayCount > MAX_DAYS) return false;
+        for (int day = 0; day < dayCount; day++) {
+            int delta = readVarint(payload);
+            if (delta < 0 || mReadPosition + 7 > payload.length) return false;
+            int locationIndex = payload[mReadPosition++] & 0xff;
+            if (locationIndex >= locationCount) return false;
+            mReadPosition += 6;
+        }
+        return true;
+    }
+
+    private void readLocation(int index, byte[] payload, int offset, int length) {
+        byte[] bytes = mLocationBytes[index];
+        boolean same = mLocationLengths[index] == length;
+        for (int i = 0; same && i < length; i++) {
+            same = bytes[i] == payload[offset + i];
+        }
+        if (!same) {
+            System.arraycopy(payload, offset, bytes, 0, length);
+            mLocationLengths[index] = length;
+            mLocations[index] = null;
+        }
+    }
+
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    /**
+     * @return the first day dated on or after the given Julian day, or -1 if the payload has
+     * nothing that recent
+     */
+    public int findDay(int julianDay) {
+        for (int day = 0; day < mDayCount; day++) {
+            if (mJulianDays[day] >= julianDay) return day;
+        }
+        return -1;
+    }
+
+    public int getJulianDay(int day) {
+        return mJulianDays[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public double getMaxTemp(int day) {
+        return mMaxTemps[day] / TEMPERATURE_SCALE;
+    }
+
+    public double getMinTemp(int day) {
+        return mMinTemps[day] / TEMPERATURE_SCALE;
+    }
+
+    public String getLocation(int day) {
+        int index = mLocationIndexes[day];
+        if (null == mLocations[index]) {
+            mLocations[index] = decodeLocation(mLocationBytes[index], mLocationLengths[index]);
+        }
+        return mLocations[index];
+    }
+
+    private static short encodeTemperature(double temperature) {
+        long scaled = Math.round(temperature * TEMPERATURE_SCALE);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scaled));
+    }
+
+    private static byte[] encodeLocation(String location) {
+        try {
+            return location.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String decodeLocation(byte[] bytes, int length) {
+        try {
+            return new String(bytes, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * @return the value, or -1 if the varint runs past the end of the payload or doesn't fit
+     * in an int
+     */
+    private int readVarint(byte[] payload) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (mReadPosition >= payload.length) return -1;
+            int b = payload[mReadPosition++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        return -1;
+    }
+
+    private static int writeShort(byte[] buffer, int position, short value) {
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static short readShort(byte[] buffer, int position) {
+        return (short) ((buffer[position] << 8) | (buffer[position + 1] & 0xff));
+    }
+}
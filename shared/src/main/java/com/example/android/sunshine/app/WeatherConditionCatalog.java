@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+
+/**
+ * The one mapping from OpenWeatherMap condition ids to the kind of weather Sunshine draws for
+ * them, compiled into both the app and the watch face so the two can't drift apart.
+ *
+ * Lookups index a dense table built once, instead of walking a chain of range checks on every
+ * bind.  Each module turns a kind into its own resources (icons, art, bitmaps) with an array
+ * indexed by kind; {@link #getArtSlug} names the kind in art pack URLs.
+ */
+public final class WeatherConditionCatalog {
+
+    public static final int KIND_UNKNOWN = -1;
+    public static final int KIND_STORM = 0;
+    public static final int KIND_LIGHT_RAIN = 1;
+    public static final int KIND_RAIN = 2;
+    public static final int KIND_SNOW = 3;
+    public static final int KIND_FOG = 4;
+    public static final int KIND_CLEAR = 5;
+    public static final int KIND_LIGHT_CLOUDS = 6;
+    public static final int KIND_CLOUDS = 7;
+    public static final int KIND_COUNT = 8;
+
+    // Covers every condition id OpenWeatherMap documents.
+    public static final int MIN_CONDITION_ID = 200;
+    public static final int MAX_CONDITION_ID = 962;
+
+    private static final String[] ART_SLUGS = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds" };
+
+    private static final byte[] KINDS = new byte[MAX_CONDITION_ID - MIN_CONDITION_ID + 1];
+
+    static {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        Arrays.fill(KINDS, (byte) KIND_UNKNOWN);
+        put(200, 232, KIND_STORM);
+        put(300, 321, KIND_LIGHT_RAIN);
+        put(500, 504, KIND_RAIN);
+        put(511, 511, KIND_SNOW);
+        put(520, 531, KIND_RAIN);
+        put(600, 622, KIND_SNOW);
+        put(701, 761, KIND_FOG);
+        put(781, 781, KIND_STORM);
+        put(800, 800, KIND_CLEAR);
+        put(801, 801, KIND_LIGHT_CLOUDS);
+        put(802, 804, KIND_CLOUDS);
+    }
+
+    private static void put(int firstId, int lastId, int kind) {
+        for (int id = firstId; id <= lastId; id++) {
+            KINDS[id - MIN_CONDITION_ID] = (byte) kind;
+        }
+    }
+
+    private WeatherConditionCatalog() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return one of the KIND_ constants, {@link #KIND_UNKNOWN} if no relation is found.
+     */
+    public static int getKind(int weatherId) {
+        if (weatherId < MIN_CONDITION_ID || weatherId > MAX_CONDITION_ID) {
+            return KIND_UNKNOWN;
+        }
+        return KINDS[weatherId - MIN_CONDITION_ID];
+    }
+
+    /**
+     * @return the name art packs use for a kind ("storm", "light_rain"...), null for
+     * {@link #KIND_UNKNOWN}.
+     */
+    public static String getArtSlug(int kind) {
+        return kind == KIND_UNKNOWN ? null : ART_SLUGS[kind];
+    }
+}
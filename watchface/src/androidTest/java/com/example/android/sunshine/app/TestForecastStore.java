@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class TestForecastStore extends AndroidTestCase {
+    private static final int FIRST_DAY = 2457590;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(mContext.getFilesDir(), ForecastStore.FILE_NAME).delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(mContext.getFilesDir(), ForecastStore.FILE_NAME).delete();
+        super.tearDown();
+    }
+
+    private static byte[] buildPayload() {
+        return new ForecastPayload.Writer()
+                .addDay(FIRST_DAY, "MOUNTAIN VIEW", 800, 21.4, 12.0)
+                .addDay(FIRST_DAY + 1, "MOUNTAIN VIEW", 500, 18.0, 9.5)
+                .toByteArray();
+    }
+
+    public void testNothingStoredYet() {
+        ForecastPayload forecast = new ForecastPayload();
+        assertEquals(0, ForecastStore.load(mContext, forecast));
+        assertEquals(0, forecast.getDayCount());
+    }
+
+    public void testStoredForecastIsLoaded() {
+        long receivedAt = System.currentTimeMillis();
+        ForecastStore.save(mContext, buildPayload(), receivedAt);
+
+        ForecastPayload forecast = new ForecastPayload();
+        assertEquals(receivedAt, ForecastStore.load(mContext, forecast));
+        assertEquals(2, forecast.getDayCount());
+        assertEquals(500, forecast.getWeatherId(forecast.findDay(FIRST_DAY + 1)));
+        assertEquals("MOUNTAIN VIEW", forecast.getLocation(0));
+    }
+
+    public void testUnreadableForecastIsIgnored() {
+        byte[] payload = buildPayload();
+        ForecastStore.save(mContext, Arrays.copyOf(payload, payload.length - 1), 1);
+
+        ForecastPayload forecast = new ForecastPayload();
+        assertEquals("Error: A cut off forecast should count as none",
+                0, ForecastStore.load(mContext, forecast));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+/*
+    Draws the face frame by frame onto a canvas that counts draw calls, and counts what each
+    frame allocates and which layers it drew again.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+    private static final int SIZE = 320;
+    // The static layer and the time layer
+    private static final int DRAWS_WITHOUT_SEPARATOR = 2;
+
+    private static class CountingCanvas extends Canvas {
+        int mDraws;
+
+        CountingCanvas(Bitmap bitmap) {
+            super(bitmap);
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+            mDraws++;
+            super.drawText(text, x, y, paint);
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            mDraws++;
+            super.drawRect(left, top, right, bottom, paint);
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            mDraws++;
+            super.drawBitmap(bitmap, left, top, paint);
+        }
+    }
+
+    private WatchFaceRenderer mRenderer;
+    private CountingCanvas mCanvas;
+    private Time mTime;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext);
+        mRenderer.setBounds(SIZE, SIZE);
+        mRenderer.setWeather(800, 21.4, 12.0, "Mountain View");
+        mCanvas = new CountingCanvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mTime = new Time("UTC");
+        mTime.set(0, 30, 10, 18, 9, 2016);
+        mTime.normalize(true);
+    }
+
+    /**
+     * @return what drawing the frame allocated on this thread
+     */
+    @SuppressWarnings("deprecation")
+    private int drawFrame() {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        mRenderer.setTime(mTime);
+        mRenderer.draw(mCanvas);
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        return allocations;
+    }
+
+    public void testFramesWithinAMinuteDontAllocate() {
+        drawFrame();
+        int staticLayerBuilds = mRenderer.getStaticLayerBuilds();
+        int timeLayerBuilds = mRenderer.getTimeLayerBuilds();
+        for (int second = 1; second < 60; second++) {
+            mTime.second = second;
+            mCanvas.mDraws = 0;
+            assertEquals("Error: Frame at second " + second + " allocated", 0, drawFrame());
+            int expectedDraws = DRAWS_WITHOUT_SEPARATOR + (second % 2 == 0 ? 1 : 0);
+            assertEquals(expectedDraws, mCanvas.mDraws);
+        }
+        assertEquals("Error: Nothing on the static layer changed",
+                staticLayerBuilds, mRenderer.getStaticLayerBuilds());
+        assertEquals(timeLayerBuilds, mRenderer.getTimeLayerBuilds());
+    }
+
+    public void testOnlyChangedLayersAreDrawnAgain() {
+        drawFrame();
+        int staticLayerBuilds = mRenderer.getStaticLayerBuilds();
+        int timeLayerBuilds = mRenderer.getTimeLayerBuilds();
+
+        mTime.minute++;
+        drawFrame();
+        assertEquals("Error: A new minute shouldn't touch the static layer",
+                staticLayerBuilds, mRenderer.getStaticLayerBuilds());
+        assertEquals(++timeLayerBuilds, mRenderer.getTimeLayerBuilds());
+
+        mRenderer.setWeather(500, 18.0, 9.5, "Mountain View");
+        drawFrame();
+        assertEquals(++staticLayerBuilds, mRenderer.getStaticLayerBuilds());
+        assertEquals("Error: New weather shouldn't touch the time layer",
+                timeLayerBuilds, mRenderer.getTimeLayerBuilds());
+
+        mTime.monthDay++;
+        mTime.normalize(true);
+        drawFrame();
+        assertEquals("Error: The date is on the static layer",
+                ++staticLayerBuilds, mRenderer.getStaticLayerBuilds());
+        timeLayerBuilds = mRenderer.getTimeLayerBuilds();
+
+        mRenderer.setAmbient(true);
+        drawFrame();
+        assertEquals(++staticLayerBuilds, mRenderer.getStaticLayerBuilds());
+        assertEquals(++timeLayerBuilds, mRenderer.getTimeLayerBuilds());
+        mTime.minute++;
+        drawFrame();
+        assertEquals("Error: An ambient minute tick should only draw the time layer",
+                staticLayerBuilds, mRenderer.getStaticLayerBuilds());
+        assertEquals(++timeLayerBuilds, mRenderer.getTimeLayerBuilds());
+    }
+
+    public void testChangesAreLaidOutOnce() {
+        drawFrame();
+
+        mTime.minute++;
+        assertTrue("Error: A new minute should be formatted", drawFrame() > 0);
+        assertEquals(0, drawFrame());
+
+        mRenderer.setWeather(500, 18.0, 9.5, "Mountain View");
+        assertTrue("Error: New weather should be formatted", drawFrame() > 0);
+        assertEquals(0, drawFrame());
+
+        mRenderer.setAmbient(true);
+        drawFrame();
+        mCanvas.mDraws = 0;
+        mTime.second = 1;
+        assertEquals(0, drawFrame());
+        assertEquals("Error: The separator should stay up in ambient mode",
+                DRAWS_WITHOUT_SEPARATOR + 1, mCanvas.mDraws);
+    }
+
+    public void testSameWeatherIsIgnored() {
+        drawFrame();
+        mRenderer.setWeather(800, 21.4, 12.0, "Mountain View");
+        assertEquals(0, drawFrame());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+public class TestWeatherIconAtlas extends AndroidTestCase {
+    private static final int SIZE = 60;
+
+    // One condition id of each kind, storm through clouds
+    private static final int[] WEATHER_IDS = { 200, 300, 500, 600, 701, 800, 801, 804 };
+
+    public void testDecodesOnlyWhatIsShownAtTheTargetSize() {
+        WeatherIconAtlas atlas = new WeatherIconAtlas(mContext.getResources());
+        atlas.setIconSize(SIZE);
+        assertEquals("Error: Nothing should be decoded up front", 0, atlas.getDecodeCount());
+
+        Bitmap clear = atlas.get(800);
+        assertEquals(SIZE, clear.getWidth());
+        assertEquals(SIZE, clear.getHeight());
+        assertSame(clear, atlas.get(800));
+        assertEquals(1, atlas.getDecodeCount());
+
+        Bitmap unknown = atlas.get(0);
+        assertEquals("Error: Unknown conditions should get the default icon at the same size",
+                SIZE, unknown.getWidth());
+    }
+
+    public void testKeepsOnlyTheLastFewIcons() {
+        WeatherIconAtlas atlas = new WeatherIconAtlas(mContext.getResources());
+        atlas.setIconSize(SIZE);
+        for (int weatherId : WEATHER_IDS) {
+            atlas.get(weatherId);
+        }
+        assertEquals(WEATHER_IDS.length, atlas.getDecodeCount());
+        assertEquals(WeatherIconAtlas.MAX_ICONS, atlas.getResidentCount());
+    }
+
+    public void testNewSizeDropsOldIcons() {
+        WeatherIconAtlas atlas = new WeatherIconAtlas(mContext.getResources());
+        atlas.setIconSize(SIZE);
+        atlas.get(800);
+        atlas.setIconSize(SIZE / 2);
+        assertEquals(0, atlas.getResidentCount());
+        assertEquals(SIZE / 2, atlas.get(800).getWidth());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the last forecast the phone sent in a small file, so that a new engine draws it on its
+ * first frame instead of waiting for the phone, and knows how old it is.
+ *
+ * The file holds a long, when the forecast was received, followed by the {@link ForecastPayload}
+ * as it arrived.  It is a few dozen bytes, so it is read on the calling thread, where a new
+ * engine needs it for its first frame; the engine writes it on a background thread.
+ */
+public class ForecastStore {
+    private static final String TAG = "ForecastStore";
+
+    static final String FILE_NAME = "forecast.bin";
+
+    private ForecastStore() {
+    }
+
+    /**
+     * Decodes the stored forecast into forecast.
+     *
+     * @return when the forecast was received, or 0 if there isn't a readable one
+     */
+    public static long load(Context context, ForecastPayload forecast) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        long length = file.length();
+        if (length <= 8 || length > 8 + ForecastPayload.MAX_SIZE) {
+            return 0;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            long receivedAt = in.readLong();
+            byte[] payload = new byte[(int) length - 8];
+            in.readFully(payload);
+            return forecast.decode(payload) ? receivedAt : 0;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading the stored forecast", e);
+            return 0;
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored forecast.  The file is written in full and then renamed over the old
+     * one, so a reader never sees half of it.
+     */
+    public static void save(Context context, byte[] payload, long receivedAt) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File temp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(temp));
+            out.writeLong(receivedAt);
+            out.write(payload);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Couldn't replace the stored forecast");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error storing the forecast", e);
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
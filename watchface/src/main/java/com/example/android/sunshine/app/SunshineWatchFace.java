@@ -20,17 +20,13 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Message;
-import android.support.v4.content.ContextCompat;
+import android.os.Process;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.Time;
@@ -40,6 +36,7 @@ import android.view.SurfaceHolder;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.CapabilityApi;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
@@ -48,13 +45,13 @@ import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.MessageApi;
 import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
-import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -70,12 +67,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
     private static final String TAG = "SunshineWatchFace";
 
-    private static final Typeface BASE_TYPEFACE = Typeface.SANS_SERIF;
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(BASE_TYPEFACE, Typeface.NORMAL);
-    private static final Typeface BOLD_TYPEFACE =
-            Typeface.create(BASE_TYPEFACE, Typeface.BOLD);
-
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
      * displayed in interactive mode.
@@ -110,38 +101,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
     }
 
-    // see http://www.slideshare.net/rtc1/intro-todrawingtextandroid for the explanation of this awesome code snippet
-    public enum TextVertAlign { Top, Middle, Baseline, Bottom } // Enumeration representing vertical alignment positions
-    public static void drawHvAlignedText(Canvas canvas, float x, float y, String s, Paint p, Paint.Align horizAlign, TextVertAlign vertAlign ) {
-        // Set horizontal alignment
-        p.setTextAlign(horizAlign);
-
-        // Get bounding rectangle which we’ll need below...
-        Rect r = new Rect();
-        p.getTextBounds(s, 0, s.length(), r);
-
-        // Note: r.top will be negative
-        // Compute y-coordinate we'll need for drawing text for specified vertical alignment
-//        float textX = x;
-        float textY = y;
-        switch (vertAlign) {
-            case Top:
-                textY = y - r.top; // Recall that r.top is negative
-                break;
-            case Middle:
-                textY = y - r.top - r.height() / 2;
-                break;
-            case Baseline: // Default behavior - no changes to y-coordinate
-                break;
-            case Bottom:
-                textY = y - (r.height() + r.top);
-                break;
-        }
-
-        canvas.drawText(s, x, textY, p);
-        // Now we can draw the text with the proper ( x, y ) coordinates
-    }
-
     private class Engine extends CanvasWatchFaceService.Engine
             implements DataApi.DataListener,
             GoogleApiClient.ConnectionCallbacks,
@@ -151,70 +110,29 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         private static final String REQ_PATH = "/weather";
         private static final String REQ_WEATHER_PATH = "/weather-req";
-        private static final String KEY_WEATHER_ID = "com.example.key.weather_id";
-        private static final String KEY_TEMP_MAX = "com.example.key.max_temp";
-        private static final String KEY_TEMP_MIN = "com.example.key.min_temp";
-        private static final String KEY_LOCATION = "com.example.key.location";
+        private static final String KEY_FORECAST = "forecast";
+        // Declared by the phone app in wear.xml
+        private static final String CAPABILITY_WEATHER_SOURCE = "sunshine_weather_source";
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
-        final float mLeading = (float)1.8;
+        // Writes the forecast to the ForecastStore off the main thread
+        HandlerThread mStoreThread;
+        Handler mStoreHandler;
 
         boolean mRegisteredTimeZoneReceiver = false;
 
-        String mTimeSeparator;
-
-        String mTemperatureFormat;
-        String mDateFormat;
-        String mHourFormat;
-        String mMinuteFormat;
-
-        Paint mHourPaint;
-        Paint mMinutePaint;
-        Paint mDatePaint;
-        Paint mDateAmbientPaint;
-        Paint mDividerPaint;
-        //Paint mDividerAmbientPaint;
-        Paint mBackgroundPaint;
-        Paint mBackgroundAmbientPaint;
-        Paint mHighTempPaint;
-        Paint mLowTempPaint;
-        Paint mTextPaint;
-        Paint mTextBoldPaint;
-        Paint mLocationPaint;
-        Paint mLocationAmbientPaint;
-
-        float mXOffset;
-        float mYOffset;
-        float mLineSpace;
-        float mCharSpace;
-
-        int mWeatherId = 0;
-        double mMaxTemperature = 50;
-        double mMinTemperature = 20;
-        String mLocation = "";
-
-        // bitmaps
-        Bitmap mBitmapStatus;
-        Bitmap mBitmapClear;
-        Bitmap mBitmapClouds;
-        Bitmap mBitmapFog;
-        Bitmap mBitmapLightClouds;
-        Bitmap mBitmapLightRain;
-        Bitmap mBitmapRain;
-        Bitmap mBitmapSnow;
-        Bitmap mBitmapStorm;
-        Bitmap mBitmapClearAmbient;
-        Bitmap mBitmapCloudsAmbient;
-        Bitmap mBitmapFogAmbient;
-        Bitmap mBitmapLightCloudsAmbient;
-        Bitmap mBitmapLightRainAmbient;
-        Bitmap mBitmapRainAmbient;
-        Bitmap mBitmapSnowAmbient;
-        Bitmap mBitmapStormAmbient;
-
-        boolean mAmbient;
-        boolean mLowBitAmbient;
+        WatchFaceRenderer mRenderer;
+
+        // The days the phone last sent; the face shows today's entry
+        final ForecastPayload mForecast = new ForecastPayload();
+        // The Julian day the face's weather was taken for, or -1 to take it again
+        int mShownJulianDay = -1;
+        // When mForecast was received, or 0 if there isn't one
+        long mForecastReceivedAt;
+        // The Julian day the phone was last asked because the forecast ran out, to ask only once
+        int mRequestedJulianDay = -1;
+        long mMaxForecastAgeMillis;
 
         Time mTime;
 
@@ -226,10 +144,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 invalidate();
             }
         };
-        /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
-         */
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -240,60 +154,16 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
                     .setShowSystemUiTime(false)
                     .build());
-            Resources resources = SunshineWatchFace.this.getResources();
-
-            // initialize hour paint
-            mHourPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_time), BOLD_TYPEFACE);
-
-            // initialize minute paint
-            mMinutePaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_time), NORMAL_TYPEFACE);
-
-            // initialize time separator
-            mTimeSeparator = resources.getString(R.string.time_separator);
-
-            // initialize date paints
-            mDatePaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_date), NORMAL_TYPEFACE);
-            mDateAmbientPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_date), NORMAL_TYPEFACE);
-
-            // initialize horizontal divider paints
-            mDividerPaint = new Paint();
-            mDividerPaint.setColor(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent));
-
-            // initialize background paints
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(ContextCompat.getColor(getBaseContext(), R.color.background));
-
-            mBackgroundAmbientPaint = new Paint();
-            mBackgroundAmbientPaint.setColor(ContextCompat.getColor(getBaseContext(), R.color.background_ambient));
-
-            // initialize temperature paints
-            mHighTempPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text), resources.getDimension(R.dimen.text_size_temperature), NORMAL_TYPEFACE);
-            mLowTempPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent), resources.getDimension(R.dimen.text_size_temperature), NORMAL_TYPEFACE);
-
-            // initialize format strings
-            mTemperatureFormat = resources.getString(R.string.format_temperature);
-            mDateFormat = resources.getString(R.string.format_watchface_date);
-            mHourFormat = resources.getString(R.string.format_hours);
-            mMinuteFormat = resources.getString(R.string.format_minutes);
-
-            mTextPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.digital_text), NORMAL_TYPEFACE);
-            mTextBoldPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.digital_text), BOLD_TYPEFACE);
-
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-
-            mLineSpace = resources.getDimension(R.dimen.line_space);
-            mCharSpace = resources.getDimension(R.dimen.char_space);
-
-            // initialize bitmaps
-            initializeBitmaps(resources);
-
-            // initialize location paint
-            mLocationPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text),
-                    resources.getDimension(R.dimen.text_size_location), NORMAL_TYPEFACE);
-            mLocationAmbientPaint = createTextPaint(ContextCompat.getColor(getBaseContext(), R.color.text_semitransparent),
-                    resources.getDimension(R.dimen.text_size_location), NORMAL_TYPEFACE);
 
+            mRenderer = new WatchFaceRenderer(SunshineWatchFace.this);
 
+            // Draw the last forecast from the first frame, and only ask the phone once it is old
+            mForecastReceivedAt = ForecastStore.load(SunshineWatchFace.this, mForecast);
+            mMaxForecastAgeMillis = TimeUnit.MINUTES.toMillis(
+                    getResources().getInteger(R.integer.forecast_max_age_minutes));
+            mStoreThread = new HandlerThread("ForecastStore", Process.THREAD_PRIORITY_BACKGROUND);
+            mStoreThread.start();
+            mStoreHandler = new Handler(mStoreThread.getLooper());
 
             mTime = new Time();
         }
@@ -301,30 +171,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            // Lets a forecast that is being stored finish first
+            mStoreThread.quitSafely();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor, Typeface typeface) {
-            Paint paint = new Paint();
-
-            paint.setColor(textColor);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-
-            return paint;
-        }
-
-        private Paint createTextPaint(int textColor, float textSize, Typeface typeface) {
-            Paint paint = new Paint();
-
-            paint.setColor(textColor);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            paint.setTextSize(textSize);
-
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             //Log.d(TAG, "onVisibilityChanged");
@@ -340,6 +191,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 mGoogleApiClient.connect();
             } else {
                 unregisterReceiver();
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, mRenderer.getStats());
+                }
 
                 if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
                     Wearable.DataApi.removeListener(mGoogleApiClient, this);
@@ -352,32 +206,41 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        /**
+         * Asks the phone for the forecast.  The message goes to the one node that declared it
+         * can send the weather, preferring a directly connected one, instead of to every node.
+         */
         private void requestWeatherUpdate() {
-            //Log.d(TAG, "requestWeatherUpdate through Message API");
-
-            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient)
-                .setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+            Wearable.CapabilityApi.getCapability(mGoogleApiClient, CAPABILITY_WEATHER_SOURCE,
+                    CapabilityApi.FILTER_REACHABLE)
+                .setResultCallback(new ResultCallback<CapabilityApi.GetCapabilityResult>() {
                     @Override
-                    public void onResult(NodeApi.GetConnectedNodesResult getConnectedNodesResult) {
-                        final List<Node> nodes = getConnectedNodesResult.getNodes();
-
-                        for (Node node : nodes) {
-                        Wearable.MessageApi.sendMessage(mGoogleApiClient
-                            , node.getId()
-                            , REQ_WEATHER_PATH
-                            , new byte[0]).setResultCallback(
+                    public void onResult(CapabilityApi.GetCapabilityResult result) {
+                        Node phone = null;
+                        if (result.getStatus().isSuccess()) {
+                            for (Node node : result.getCapability().getNodes()) {
+                                if (null == phone || node.isNearby()) {
+                                    phone = node;
+                                }
+                            }
+                        }
+                        if (null == phone) {
+                            Log.d(TAG, "No phone to ask for the weather");
+                            return;
+                        }
+                        Wearable.MessageApi.sendMessage(mGoogleApiClient, phone.getId(),
+                                REQ_WEATHER_PATH, new byte[0]).setResultCallback(
                             new ResultCallback<MessageApi.SendMessageResult>() {
-                                    @Override
-                                    public void onResult(MessageApi.SendMessageResult sendMessageResult) {
-                                        if (sendMessageResult.getStatus().isSuccess()) {
-                                            Log.d(TAG, "Message successfully sent");
-                                        } else {
-                                            Log.d(TAG, "Message failed to send");
-                                        }
+                                @Override
+                                public void onResult(MessageApi.SendMessageResult sendMessageResult) {
+                                    if (sendMessageResult.getStatus().isSuccess()) {
+                                        Log.d(TAG, "Message successfully sent");
+                                    } else {
+                                        Log.d(TAG, "Message failed to send");
                                     }
                                 }
-                            );
-                        }
+                            }
+                        );
                     }
                 });
         }
@@ -428,7 +291,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false));
         }
 
         @Override
@@ -440,17 +303,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
-            if (mAmbient != inAmbientMode) {
-                mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mHourPaint.setAntiAlias(!inAmbientMode);
-                    mMinutePaint.setAntiAlias(!inAmbientMode);
-                    mDateAmbientPaint.setAntiAlias(!inAmbientMode);
-                    mLocationPaint.setAntiAlias(!inAmbientMode);
-                    mLocationAmbientPaint.setAntiAlias(!inAmbientMode);
-                }
-                invalidate();
-            }
+            mRenderer.setAmbient(inAmbientMode);
+            invalidate();
 
             // Whether the timer should be running depends on whether we're visible (as well as
             // whether we're in ambient mode), so we may need to start or stop the timer.
@@ -459,140 +313,46 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            Paint backgroundPaint = mAmbient ? mBackgroundAmbientPaint : mBackgroundPaint;
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), backgroundPaint);
-
             mTime.setToNow();
+            updateToday();
 
-            // draw date
-            String dateText = mTime.format(mDateFormat).toUpperCase();
-            Paint datePaint = mAmbient ? mDateAmbientPaint : mDatePaint;
-            Rect dateBounds = new Rect();
-            datePaint.getTextBounds(dateText, 0, dateText.length(), dateBounds);
-            drawHvAlignedText(
-                    canvas,
-                    (bounds.width() - dateBounds.width()) / 2,
-                    bounds.height() / 2 - mLeading * dateBounds.height(),
-                    dateText,
-                    datePaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // initialize separator stuff
-            Paint separatorPaint = mMinutePaint;
-            Rect separatorBounds = new Rect();
-            separatorPaint.getTextBounds(mTimeSeparator, 0, mTimeSeparator.length(), separatorBounds);
-
-            // draw minutes
-            String minuteText = mTime.format(mMinuteFormat);
-            Paint minutePaint = mMinutePaint;
-            Rect minuteBounds = new Rect();
-            minutePaint.getTextBounds(minuteText, 0, minuteText.length(), minuteBounds);
-            drawHvAlignedText(
-                    canvas,
-                    (bounds.width() + separatorBounds.width()) / 2,
-                    bounds.height() / 2 - dateBounds.height() - mLeading * minuteBounds.height(),
-                    minuteText,
-                    minutePaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // draw hours
-            String hourText = mTime.format(mHourFormat);
-            Paint hourPaint = mHourPaint;
-            Rect hourBounds = new Rect();
-            hourPaint.getTextBounds(hourText, 0, hourText.length(), hourBounds);
-            drawHvAlignedText(
-                    canvas,
-                    (bounds.width() - separatorBounds.width()) / 2 - hourBounds.width(),
-                    bounds.height() / 2 - dateBounds.height() - mLeading * minuteBounds.height(),
-                    hourText,
-                    hourPaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // draw time separator
-            boolean drawSeparator = mAmbient || (mTime.second % 2) == 0;
-            if (drawSeparator) {
-                drawHvAlignedText(
-                        canvas,
-                        (bounds.width() - separatorBounds.width()) / 2,
-                        bounds.height() / 2 - dateBounds.height() - mLeading * minuteBounds.height() + minuteBounds.height() / 2,
-                        // for some reason I cannot keep leading and trailing spaces added to the separator string in the strings.xml file;
-                        // so I'm adding a magic character to replace it with a space character right before displaying the separator
-                        mTimeSeparator.replace('|', ' '),
-                        separatorPaint,
-                        Paint.Align.LEFT,
-                        TextVertAlign.Middle);
-            }
+            mRenderer.setBounds(bounds.width(), bounds.height());
+            mRenderer.setTime(mTime);
+            mRenderer.draw(canvas);
+        }
 
-            // draw a horizontal divider
-            canvas.drawRect(
-                    (bounds.width() * 3) / 8,
-                    bounds.height() / 2 - 1,
-                    (bounds.width() * 5) / 8,
-                    bounds.height() / 2 + 1,
-                    mDividerPaint);
-
-            // For temperatures and weather icons I'm dividing the screen into 5 equal columns,
-            // and display the weather icon in the 2nd column.
-            // The high temperature goes into the 3rd column, and the low temperature goes into the 4th column.
-            // Everything is centered.
-
-            // draw an icon
-            Bitmap icon = getBitmapForWeatherCondition(mWeatherId);
-            canvas.drawBitmap(icon,
-                    (bounds.width() / 5 + (bounds.width() / 5 - icon.getHeight()) / 2),
-                    bounds.height() / 2 + mLeading,
-                    null);
-
-            // draw a high temperature
-            String highTempText = String.format(mTemperatureFormat, mMaxTemperature);
-            Paint highTempPaint = mHighTempPaint;
-            Rect highTempBounds = new Rect();
-            highTempPaint.getTextBounds(highTempText, 0, highTempText.length(), highTempBounds);
-            drawHvAlignedText(
-                    canvas,
-                    // The high temperature goes into the 3rd column.
-                    // Everything is centered.
-                    (bounds.width() * 2 / 5 + (bounds.width() / 5 - highTempBounds.width()) / 2),
-                    bounds.height() / 2 + mLeading * dateBounds.height() - dateBounds.height(),
-                    highTempText,
-                    highTempPaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // draw a low temperature
-            String lowTempText = String.format(mTemperatureFormat, mMinTemperature);
-            Paint lowTempPaint = mLowTempPaint;
-            Rect lowTempBounds = new Rect();
-            lowTempPaint.getTextBounds(lowTempText, 0, lowTempText.length(), lowTempBounds);
-            drawHvAlignedText(
-                    canvas,
-                    // The low temperature goes into the 4th column.
-                    // Everything is centered.
-                    (bounds.width() * 3 / 5 + (bounds.width() / 5 - lowTempBounds.width()) / 2),
-                    bounds.height() / 2 + mLeading * dateBounds.height() - dateBounds.height(),
-                    lowTempText,
-                    lowTempPaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
-
-            // draw location
-            // draw location
-            String locationText = mLocation.trim().toUpperCase();
-            Paint locationPaint = mAmbient ? mLocationAmbientPaint : mLocationPaint;
-            Rect locationBounds = new Rect();
-            locationPaint.getTextBounds(locationText, 0, locationText.length(), locationBounds);
-            drawHvAlignedText(
-                    canvas,
-                    (bounds.width() - locationBounds.width()) / 2,
-                    bounds.height() / 2 + mLeading * 2 + icon.getHeight(),
-                    locationText,
-                    locationPaint,
-                    Paint.Align.LEFT,
-                    TextVertAlign.Top);
+        /**
+         * Adds the draw statistics to {@code adb shell dumpsys activity service SunshineWatchFace}.
+         */
+        @Override
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter out, String[] args) {
+            super.dump(prefix, fd, out, args);
+            out.print(prefix);
+            out.print("Draws: ");
+            out.println(null == mRenderer ? "not created yet" : mRenderer.getStats());
+        }
+
+        /**
+         * Takes the shown weather from today's entry in the forecast.  Since the forecast holds
+         * the next few days, "today" moves on at midnight without asking the phone.  If the
+         * forecast doesn't reach today, the last values stay up and the phone is asked once.
+         */
+        private void updateToday() {
+            int today = Time.getJulianDay(System.currentTimeMillis(), mTime.gmtoff);
+            if (today == mShownJulianDay) {
+                return;
+            }
+            int day = mForecast.findDay(today);
+            if (day < 0) {
+                if (today != mRequestedJulianDay && mGoogleApiClient.isConnected()) {
+                    mRequestedJulianDay = today;
+                    requestWeatherUpdate();
+                }
+                return;
+            }
+            mShownJulianDay = today;
+            mRenderer.setWeather(mForecast.getWeatherId(day), mForecast.getMaxTemp(day),
+                    mForecast.getMinTemp(day), mForecast.getLocation(day));
         }
 
         /**
@@ -638,7 +398,24 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             Log.d(TAG, "onConnected");
             Wearable.DataApi.addListener(mGoogleApiClient, this);
 
-            requestWeatherUpdate();
+            if (isForecastStale()) {
+                // So that updateToday doesn't ask again before the answer arrives
+                mRequestedJulianDay = Time.getJulianDay(System.currentTimeMillis(), mTime.gmtoff);
+                requestWeatherUpdate();
+            }
+        }
+
+        /**
+         * @return true if there is no forecast, it is older than the configured age, or it
+         * doesn't reach today
+         */
+        private boolean isForecastStale() {
+            long now = System.currentTimeMillis();
+            if (0 == mForecastReceivedAt || now - mForecastReceivedAt > mMaxForecastAgeMillis) {
+                return true;
+            }
+            mTime.setToNow();
+            return mForecast.findDay(Time.getJulianDay(now, mTime.gmtoff)) < 0;
         }
 
         @Override
@@ -656,12 +433,22 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     if (path.equals((REQ_PATH))) {
                         DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
 
-                        mWeatherId = dataMap.getInt(KEY_WEATHER_ID);
-                        mMaxTemperature = dataMap.getDouble(KEY_TEMP_MAX);
-                        mMinTemperature = dataMap.getDouble(KEY_TEMP_MIN);
-                        mLocation = dataMap.getString(KEY_LOCATION);
-
-                        invalidate();
+                        final byte[] payload = dataMap.getByteArray(KEY_FORECAST);
+                        if (mForecast.decode(payload)) {
+                            final long receivedAt = System.currentTimeMillis();
+                            mForecastReceivedAt = receivedAt;
+                            mStoreHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    ForecastStore.save(SunshineWatchFace.this, payload,
+                                            receivedAt);
+                                }
+                            });
+                            mShownJulianDay = -1;
+                            invalidate();
+                        } else {
+                            Log.w(TAG, "Unreadable forecast payload");
+                        }
                     }
                 } else if (event.getType() == DataEvent.TYPE_DELETED) {
                     // DataItem deleted
@@ -676,55 +463,5 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         }
 
-        private void initializeBitmaps(Resources resources) {
-            mBitmapStatus = BitmapFactory.decodeResource(resources, R.drawable.ic_status);
-            mBitmapClear = BitmapFactory.decodeResource(resources, R.drawable.ic_clear);
-            mBitmapClouds = BitmapFactory.decodeResource(resources, R.drawable.ic_cloudy);
-            mBitmapFog = BitmapFactory.decodeResource(resources, R.drawable.ic_fog);
-            mBitmapLightClouds = BitmapFactory.decodeResource(resources, R.drawable.ic_light_clouds);
-            mBitmapLightRain = BitmapFactory.decodeResource(resources, R.drawable.ic_light_rain);
-            mBitmapRain = BitmapFactory.decodeResource(resources, R.drawable.ic_rain);
-            mBitmapSnow = BitmapFactory.decodeResource(resources, R.drawable.ic_snow);
-            mBitmapStorm = BitmapFactory.decodeResource(resources, R.drawable.ic_storm);
-            mBitmapClearAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_clear_grayscale);
-            mBitmapCloudsAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_cloudy_grayscale);
-            mBitmapFogAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_fog_grayscale);
-            mBitmapLightCloudsAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_light_clouds_grayscale);
-            mBitmapLightRainAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_light_rain_grayscale);
-            mBitmapRainAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_rain_grayscale);
-            mBitmapSnowAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_snow_grayscale);
-            mBitmapStormAmbient = BitmapFactory.decodeResource(resources, R.drawable.ic_storm_grayscale);
-        }
-
-        private Bitmap getBitmapForWeatherCondition(int weatherId) {
-            // Based on weather code data found at:
-            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-            if (weatherId >= 200 && weatherId <= 232) {
-                return mAmbient ? mBitmapStormAmbient : mBitmapStorm;
-            } else if (weatherId >= 300 && weatherId <= 321) {
-                return mAmbient ? mBitmapLightRainAmbient : mBitmapLightRain;
-            } else if (weatherId >= 500 && weatherId <= 504) {
-                return mAmbient ? mBitmapRainAmbient : mBitmapRain;
-            } else if (weatherId == 511) {
-                return mAmbient ? mBitmapSnowAmbient : mBitmapSnow;
-            } else if (weatherId >= 520 && weatherId <= 531) {
-                return mAmbient ? mBitmapRainAmbient : mBitmapRain;
-            } else if (weatherId >= 600 && weatherId <= 622) {
-                return mAmbient ? mBitmapSnowAmbient : mBitmapSnow;
-            } else if (weatherId >= 701 && weatherId <= 761) {
-                return mAmbient ? mBitmapFogAmbient : mBitmapFog;
-            } else if (weatherId == 761 || weatherId == 781) {
-                return mAmbient ? mBitmapStormAmbient : mBitmapStorm;
-            } else if (weatherId == 800) {
-                return mAmbient ? mBitmapClearAmbient : mBitmapClear;
-            } else if (weatherId == 801) {
-                return mAmbient ? mBitmapLightCloudsAmbient : mBitmapLightClouds;
-            } else if (weatherId >= 802 && weatherId <= 804) {
-                return mAmbient ? mBitmapCloudsAmbient : mBitmapClouds;
-            }
-
-            // default bitmap
-            return mBitmapStatus;
-        }
     }
 }
\ No newline at end of file
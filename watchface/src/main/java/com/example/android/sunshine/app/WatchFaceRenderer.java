@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.os.SystemClock;
+import android.text.format.Time;
+
+/**
+ * Draws the Sunshine watch face, keeping everything a frame needs between frames.
+ *
+ * The strings, their bounds and where they go are only worked out again when something they
+ * depend on changes: the minute, the date, the weather, ambient mode or the surface size.  Every
+ * other frame, which in interactive mode means once a second, {@link #draw} is nothing but draw
+ * calls and doesn't allocate.
+ *
+ * The face is composited from two pre-rendered layers.  The static layer holds the background,
+ * the date, the divider and the weather, and is only drawn again when one of those changes.  The
+ * time layer is a band holding the hours and minutes, drawn again when the minute changes.  A
+ * frame blits the two and draws the blinking separator on top; in ambient mode, where the face
+ * is only redrawn on the minute tick, that means the time layer is all that gets drawn.
+ */
+public class WatchFaceRenderer {
+
+    private static final Typeface BASE_TYPEFACE = Typeface.SANS_SERIF;
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(BASE_TYPEFACE, Typeface.NORMAL);
+    private static final Typeface BOLD_TYPEFACE =
+            Typeface.create(BASE_TYPEFACE, Typeface.BOLD);
+
+    private static final float LEADING = 1.8f;
+    private static final int ICON_MARGIN = 2;
+
+    private final String mTimeSeparator;
+    // for some reason I cannot keep leading and trailing spaces added to the separator string in
+    // the strings.xml file; so I'm adding a magic character to replace it with a space character
+    // right before displaying the separator
+    private final String mTimeSeparatorText;
+    private final String mTemperatureFormat;
+    private final String mDateFormat;
+    private final String mHourFormat;
+    private final String mMinuteFormat;
+
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final Paint mDatePaint;
+    private final Paint mDateAmbientPaint;
+    private final Paint mDividerPaint;
+    private final Paint mBackgroundPaint;
+    private final Paint mBackgroundAmbientPaint;
+    private final Paint mHighTempPaint;
+    private final Paint mLowTempPaint;
+    private final Paint mLocationPaint;
+    private final Paint mLocationAmbientPaint;
+
+    private final WeatherIconAtlas mIcons;
+    // Draws icons in gray in ambient mode
+    private final Paint mAmbientIconPaint;
+
+    // Inputs
+    private int mWidth;
+    private int mHeight;
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private int mYear = -1;
+    private int mYearDay = -1;
+    private int mHour = -1;
+    private int mMinute = -1;
+    private boolean mShowSeparator;
+    private int mWeatherId;
+    private double mMaxTemperature;
+    private double mMinTemperature;
+    private String mLocation;
+
+    // Worked out from the inputs
+    private boolean mLayoutDirty = true;
+    private boolean mStaticLayerDirty = true;
+    private boolean mTimeLayerDirty = true;
+    private Bitmap mStaticLayer;
+    private Bitmap mTimeLayer;
+    private final Canvas mLayerCanvas = new Canvas();
+    private int mTimeLayerTop;
+    private String mDateText;
+    private String mHourText;
+    private String mMinuteText;
+    private String mHighTempText;
+    private String mLowTempText;
+    private String mLocationText;
+    private Bitmap mIcon;
+    private Paint mBackground;
+    private Paint mDateTextPaint;
+    private Paint mLocationTextPaint;
+    private final Rect mDateBounds = new Rect();
+    private final Rect mSeparatorBounds = new Rect();
+    private final Rect mSeparatorTextBounds = new Rect();
+    private final Rect mHourBounds = new Rect();
+    private final Rect mMinuteBounds = new Rect();
+    private final Rect mHighTempBounds = new Rect();
+    private final Rect mLowTempBounds = new Rect();
+    private final Rect mLocationBounds = new Rect();
+    private float mDateX, mDateY;
+    private float mHourX, mHourY, mMinuteX, mMinuteY;
+    private float mSeparatorX, mSeparatorY;
+    private float mDividerLeft, mDividerTop, mDividerRight, mDividerBottom;
+    private float mIconX, mIconY;
+    private float mHighTempX, mHighTempY, mLowTempX, mLowTempY;
+    private float mLocationX, mLocationY;
+
+    // Statistics
+    private int mFrames;
+    private long mDrawNanos;
+    private long mMaxDrawNanos;
+    private int mStaticLayerBuilds;
+    private int mTimeLayerBuilds;
+
+    public WatchFaceRenderer(Context context) {
+        Resources resources = context.getResources();
+        int textColor = ContextCompat.getColor(context, R.color.text);
+        int semitransparentColor = ContextCompat.getColor(context, R.color.text_semitransparent);
+
+        mHourPaint = createTextPaint(textColor,
+                resources.getDimension(R.dimen.text_size_time), BOLD_TYPEFACE);
+        mMinutePaint = createTextPaint(textColor,
+                resources.getDimension(R.dimen.text_size_time), NORMAL_TYPEFACE);
+
+        mTimeSeparator = resources.getString(R.string.time_separator);
+        mTimeSeparatorText = mTimeSeparator.replace('|', ' ');
+
+        mDatePaint = createTextPaint(textColor,
+                resources.getDimension(R.dimen.text_size_date), NORMAL_TYPEFACE);
+        mDateAmbientPaint = createTextPaint(semitransparentColor,
+                resources.getDimension(R.dimen.text_size_date), NORMAL_TYPEFACE);
+
+        mDividerPaint = new Paint();
+        mDividerPaint.setColor(semitransparentColor);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(ContextCompat.getColor(context, R.color.background));
+        mBackgroundAmbientPaint = new Paint();
+        mBackgroundAmbientPaint.setColor(
+                ContextCompat.getColor(context, R.color.background_ambient));
+
+        mHighTempPaint = createTextPaint(textColor,
+                resources.getDimension(R.dimen.text_size_temperature), NORMAL_TYPEFACE);
+        mLowTempPaint = createTextPaint(semitransparentColor,
+                resources.getDimension(R.dimen.text_size_temperature), NORMAL_TYPEFACE);
+
+        mTemperatureFormat = resources.getString(R.string.format_temperature);
+        mDateFormat = resources.getString(R.string.format_watchface_date);
+        mHourFormat = resources.getString(R.string.format_hours);
+        mMinuteFormat = resources.getString(R.string.format_minutes);
+
+        mLocationPaint = createTextPaint(textColor,
+                resources.getDimension(R.dimen.text_size_location), NORMAL_TYPEFACE);
+        mLocationAmbientPaint = createTextPaint(semitransparentColor,
+                resources.getDimension(R.dimen.text_size_location), NORMAL_TYPEFACE);
+
+        // Icons are decoded when first shown, at a size that depends on the surface
+        mIcons = new WeatherIconAtlas(resources);
+        ColorMatrix grayscale = new ColorMatrix();
+        grayscale.setSaturation(0);
+        mAmbientIconPaint = new Paint();
+        mAmbientIconPaint.setColorFilter(new ColorMatrixColorFilter(grayscale));
+
+        // Until there is a forecast, the face shows the default icon and no temperatures
+        mHighTempText = "";
+        mLowTempText = "";
+        mLocationText = "";
+    }
+
+    private static Paint createTextPaint(int textColor, float textSize, Typeface typeface) {
+        Paint paint = new Paint();
+
+        paint.setColor(textColor);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        paint.setTextSize(textSize);
+
+        return paint;
+    }
+
+    public void setBounds(int width, int height) {
+        if (width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            invalidateLayers();
+        }
+    }
+
+    /**
+     * Whether the display supports fewer bits for each color in ambient mode. When true, the
+     * text is drawn without anti-aliasing in ambient mode.
+     */
+    public void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+    }
+
+    public void setAmbient(boolean ambient) {
+        if (ambient == mAmbient) {
+            return;
+        }
+        mAmbient = ambient;
+        if (mLowBitAmbient) {
+            mHourPaint.setAntiAlias(!ambient);
+            mMinutePaint.setAntiAlias(!ambient);
+            mDateAmbientPaint.setAntiAlias(!ambient);
+            mLocationPaint.setAntiAlias(!ambient);
+            mLocationAmbientPaint.setAntiAlias(!ambient);
+        }
+        invalidateLayers();
+    }
+
+    /**
+     * Called every frame; the time strings are only formatted again when the minute changes.
+     */
+    public void setTime(Time time) {
+        // In ambient mode the seconds aren't displayed, so the separator stays put
+        mShowSeparator = mAmbient || (time.second % 2) == 0;
+        if (time.minute == mMinute && time.hour == mHour
+                && time.yearDay == mYearDay && time.year == mYear) {
+            return;
+        }
+        if (time.yearDay != mYearDay || time.year != mYear) {
+            mDateText = time.format(mDateFormat).toUpperCase();
+            mYear = time.year;
+            mYearDay = time.yearDay;
+            mStaticLayerDirty = true;
+        }
+        mHourText = time.format(mHourFormat);
+        mMinuteText = time.format(mMinuteFormat);
+        mHour = time.hour;
+        mMinute = time.minute;
+        mLayoutDirty = true;
+        mTimeLayerDirty = true;
+    }
+
+    public void setWeather(int weatherId, double maxTemperature, double minTemperature,
+                           String location) {
+        if (weatherId == mWeatherId && maxTemperature == mMaxTemperature
+                && minTemperature == mMinTemperature && location.equals(mLocation)) {
+            return;
+        }
+        mWeatherId = weatherId;
+        mMaxTemperature = maxTemperature;
+        mMinTemperature = minTemperature;
+        mLocation = location;
+        mHighTempText = String.format(mTemperatureFormat, maxTemperature);
+        mLowTempText = String.format(mTemperatureFormat, minTemperature);
+        mLocationText = location.trim().toUpperCase();
+        mLayoutDirty = true;
+        mStaticLayerDirty = true;
+    }
+
+    private void invalidateLayers() {
+        mLayoutDirty = true;
+        mStaticLayerDirty = true;
+        mTimeLayerDirty = true;
+    }
+
+    public void draw(Canvas canvas) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        if (mLayoutDirty) {
+            layout();
+            mLayoutDirty = false;
+        }
+        if (mStaticLayerDirty) {
+            drawStaticLayer();
+            mStaticLayerDirty = false;
+        }
+        if (mTimeLayerDirty) {
+            drawTimeLayer();
+            mTimeLayerDirty = false;
+        }
+
+        canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        canvas.drawBitmap(mTimeLayer, 0, mTimeLayerTop, null);
+        if (mShowSeparator) {
+            canvas.drawText(mTimeSeparatorText, mSeparatorX, mSeparatorY, mMinutePaint);
+        }
+
+        long nanos = SystemClock.elapsedRealtimeNanos() - start;
+        mFrames++;
+        mDrawNanos += nanos;
+        mMaxDrawNanos = Math.max(mMaxDrawNanos, nanos);
+    }
+
+    private void drawStaticLayer() {
+        if (null == mStaticLayer
+                || mStaticLayer.getWidth() != mWidth || mStaticLayer.getHeight() != mHeight) {
+            // The background fills it, so it needs no alpha and takes half the memory
+            mStaticLayer = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.RGB_565);
+        }
+        Canvas canvas = mLayerCanvas;
+        canvas.setBitmap(mStaticLayer);
+
+        canvas.drawRect(0, 0, mWidth, mHeight, mBackground);
+        canvas.drawText(mDateText, mDateX, mDateY, mDateTextPaint);
+        canvas.drawRect(mDividerLeft, mDividerTop, mDividerRight, mDividerBottom, mDividerPaint);
+        canvas.drawBitmap(mIcon, mIconX, mIconY, mAmbient ? mAmbientIconPaint : null);
+        canvas.drawText(mHighTempText, mHighTempX, mHighTempY, mHighTempPaint);
+        canvas.drawText(mLowTempText, mLowTempX, mLowTempY, mLowTempPaint);
+        canvas.drawText(mLocationText, mLocationX, mLocationY, mLocationTextPaint);
+
+        canvas.setBitmap(null);
+        mStaticLayerBuilds++;
+    }
+
+    private void drawTimeLayer() {
+        // The band spans the hours and minutes, whose bounds change with the digits
+        int top = (int) Math.floor(Math.min(mHourY + mHourBounds.top, mMinuteY + mMinuteBounds.top));
+        int bottom = (int) Math.ceil(
+                Math.max(mHourY + mHourBounds.bottom, mMinuteY + mMinuteBounds.bottom));
+        // A pixel either side for anti-aliasing
+        mTimeLayerTop = Math.max(0, top - 1);
+        int height = Math.max(1, Math.min(mHeight, bottom + 1) - mTimeLayerTop);
+        // Reused while the band fits, so a new minute doesn't allocate a bitmap
+        if (null == mTimeLayer || mTimeLayer.getWidth() != mWidth
+                || mTimeLayer.getHeight() < height) {
+            mTimeLayer = Bitmap.createBitmap(mWidth, height, Bitmap.Config.ARGB_8888);
+        }
+        mTimeLayer.eraseColor(Color.TRANSPARENT);
+        Canvas canvas = mLayerCanvas;
+        canvas.setBitmap(mTimeLayer);
+
+        canvas.drawText(mMinuteText, mMinuteX, mMinuteY - mTimeLayerTop, mMinutePaint);
+        canvas.drawText(mHourText, mHourX, mHourY - mTimeLayerTop, mHourPaint);
+
+        canvas.setBitmap(null);
+        mTimeLayerBuilds++;
+    }
+
+    /**
+     * @return a summary of the frames drawn so far and of how often each layer was drawn again
+     */
+    public String getStats() {
+        long averageMicros = mFrames == 0 ? 0 : mDrawNanos / mFrames / 1000;
+        return mFrames + " frames, average " + averageMicros + "us, max "
+                + mMaxDrawNanos / 1000 + "us; static layer drawn " + mStaticLayerBuilds
+                + " times, time layer " + mTimeLayerBuilds + " times; " + mIcons.getStats();
+    }
+
+    int getStaticLayerBuilds() {
+        return mStaticLayerBuilds;
+    }
+
+    int getTimeLayerBuilds() {
+        return mTimeLayerBuilds;
+    }
+
+    /**
+     * Measures the strings and works out where everything goes.  All text is drawn left aligned
+     * from the positions worked out here.
+     */
+    private void layout() {
+        int width = mWidth;
+        int height = mHeight;
+        mBackground = mAmbient ? mBackgroundAmbientPaint : mBackgroundPaint;
+        mDateTextPaint = mAmbient ? mDateAmbientPaint : mDatePaint;
+        mLocationTextPaint = mAmbient ? mLocationAmbientPaint : mLocationPaint;
+        // The icon fills its column, less a margin
+        mIcons.setIconSize(Math.max(1, width / 5 - 2 * ICON_MARGIN));
+        mIcon = mIcons.get(mWeatherId);
+
+        // date
+        measure(mDateTextPaint, mDateText, mDateBounds);
+        mDateX = (width - mDateBounds.width()) / 2;
+        mDateY = alignTop(height / 2 - LEADING * mDateBounds.height(), mDateBounds);
+
+        // hours, minutes and the separator between them
+        measure(mMinutePaint, mTimeSeparator, mSeparatorBounds);
+        measure(mMinutePaint, mTimeSeparatorText, mSeparatorTextBounds);
+        measure(mMinutePaint, mMinuteText, mMinuteBounds);
+        measure(mHourPaint, mHourText, mHourBounds);
+        float timeTop = height / 2 - mDateBounds.height() - LEADING * mMinuteBounds.height();
+        mMinuteX = (width + mSeparatorBounds.width()) / 2;
+        mHourX = (width - mSeparatorBounds.width()) / 2 - mHourBounds.width();
+        mMinuteY = alignTop(timeTop, mMinuteBounds);
+        mHourY = alignTop(timeTop, mHourBounds);
+        mSeparatorX = (width - mSeparatorBounds.width()) / 2;
+        mSeparatorY = alignMiddle(timeTop + mMinuteBounds.height() / 2, mSeparatorTextBounds);
+
+        // a horizontal divider
+        mDividerLeft = (width * 3) / 8;
+        mDividerTop = height / 2 - 1;
+        mDividerRight = (width * 5) / 8;
+        mDividerBottom = height / 2 + 1;
+
+        // For temperatures and weather icons I'm dividing the screen into 5 equal columns,
+        // and display the weather icon in the 2nd column.
+        // The high temperature goes into the 3rd column, and the low temperature goes into the 4th column.
+        // Everything is centered.
+        mIconX = width / 5 + (width / 5 - mIcon.getHeight()) / 2;
+        mIconY = height / 2 + LEADING;
+
+        measure(mHighTempPaint, mHighTempText, mHighTempBounds);
+        measure(mLowTempPaint, mLowTempText, mLowTempBounds);
+        float tempTop = height / 2 + LEADING * mDateBounds.height() - mDateBounds.height();
+        mHighTempX = width * 2 / 5 + (width / 5 - mHighTempBounds.width()) / 2;
+        mLowTempX = width * 3 / 5 + (width / 5 - mLowTempBounds.width()) / 2;
+        mHighTempY = alignTop(tempTop, mHighTempBounds);
+        mLowTempY = alignTop(tempTop, mLowTempBounds);
+
+        // location
+        measure(mLocationTextPaint, mLocationText, mLocationBounds);
+        mLocationX = (width - mLocationBounds.width()) / 2;
+        mLocationY = alignTop(height / 2 + LEADING * 2 + mIcon.getHeight(), mLocationBounds);
+    }
+
+    private static void measure(Paint paint, String text, Rect bounds) {
+        paint.getTextBounds(text, 0, text.length(), bounds);
+    }
+
+    // see http://www.slideshare.net/rtc1/intro-todrawingtextandroid for the explanation of these
+    // baseline offsets.  Note: bounds.top is negative.
+    private static float alignTop(float y, Rect bounds) {
+        return y - bounds.top;
+    }
+
+    private static float alignMiddle(float y, Rect bounds) {
+        return y - bounds.top - bounds.height() / 2;
+    }
+
+}
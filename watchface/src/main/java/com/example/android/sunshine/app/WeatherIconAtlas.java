@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+/**
+ * The watch face's weather icons, decoded only when first shown and straight to the size the
+ * face draws them at.
+ *
+ * The face only ever shows one icon at a time, so only the last few are kept.  Ambient mode
+ * draws the same bitmaps through a grayscale filter rather than keeping a second set.
+ */
+public class WeatherIconAtlas {
+
+    /**
+     * Weather icons indexed by WeatherConditionCatalog kind.
+     */
+    private static final int[] CONDITION_ICONS = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_clear, R.drawable.ic_light_clouds, R.drawable.ic_cloudy };
+
+    // Enough for today's icon, yesterday's and one to spare
+    static final int MAX_ICONS = 3;
+
+    private final Resources mResources;
+    private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+    // Keyed by kind, with KIND_UNKNOWN for the default icon
+    private final LruCache<Integer, Bitmap> mIcons = new LruCache<Integer, Bitmap>(MAX_ICONS);
+    private int mIconSize;
+
+    private int mDecodes;
+
+    public WeatherIconAtlas(Resources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * Sets the width and height icons are decoded at, dropping icons of any other size.
+     */
+    public void setIconSize(int size) {
+        if (size != mIconSize) {
+            mIconSize = size;
+            mIcons.evictAll();
+        }
+    }
+
+    public Bitmap get(int weatherId) {
+        int kind = WeatherConditionCatalog.getKind(weatherId);
+        Bitmap icon = mIcons.get(kind);
+        if (null == icon) {
+            int resId = kind != WeatherConditionCatalog.KIND_UNKNOWN
+                    ? CONDITION_ICONS[kind]
+                    // default bitmap
+                    : R.drawable.ic_status;
+            icon = decode(resId);
+            mIcons.put(kind, icon);
+        }
+        return icon;
+    }
+
+    private Bitmap decode(int resId) {
+        // Find the icon's own size, then let the decoder scale it straight to the target size
+        // instead of decoding it at full size and scaling a copy
+        BitmapFactory.Options options = mOptions;
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(mResources, resId, options);
+
+        options.inJustDecodeBounds = false;
+        options.inScaled = true;
+        options.inDensity = Math.max(options.outWidth, options.outHeight);
+        options.inTargetDensity = mIconSize;
+        mDecodes++;
+        Bitmap icon = BitmapFactory.decodeResource(mResources, resId, options);
+        // The "densities" above only set the scale; the canvas mustn't scale the icon again
+        icon.setDensity(Bitmap.DENSITY_NONE);
+        return icon;
+    }
+
+    /**
+     * @return a summary of how many icons were decoded and how much memory is held
+     */
+    public String getStats() {
+        long bytes = 0;
+        for (Bitmap icon : mIcons.snapshot().values()) {
+            bytes += icon.getByteCount();
+        }
+        return mDecodes + " icons decoded at " + mIconSize + "px, " + mIcons.size()
+                + " resident taking " + bytes + " bytes";
+    }
+
+    int getDecodeCount() {
+        return mDecodes;
+    }
+
+    int getResidentCount() {
+        return mIcons.size();
+    }
+}